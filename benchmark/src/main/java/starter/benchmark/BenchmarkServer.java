@@ -0,0 +1,57 @@
+package starter.benchmark;
+
+import ca.uhn.fhir.jpa.subscription.channel.config.SubscriptionChannelConfig;
+import ca.uhn.fhir.jpa.subscription.match.config.SubscriptionProcessorConfig;
+import ca.uhn.fhir.jpa.subscription.submit.config.SubscriptionSubmitterConfig;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.elasticsearch.ElasticsearchRestClientAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import starter.AppProperties;
+import starter.FhirServerConfigCommon;
+import starter.FhirServerConfigR4;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Boots the R4 server configuration of the starter against an in-memory H2 database, without the servlets.
+ * <p>
+ * Properties passed as system properties (e.g. <code>-Dhapi.fhir.normalized_quantity_search_level=...</code> through
+ * <code>-jvmArgs</code>) override the defaults below, so configuration changes can be benchmarked without rebuilding.
+ */
+@Configuration
+@EnableAutoConfiguration(exclude = {ElasticsearchRestClientAutoConfiguration.class})
+@Import({AppProperties.class, FhirServerConfigCommon.class, FhirServerConfigR4.class, SubscriptionSubmitterConfig.class, SubscriptionProcessorConfig.class, SubscriptionChannelConfig.class})
+public class BenchmarkServer {
+
+	public static ConfigurableApplicationContext start() {
+		return start(new HashMap<>());
+	}
+
+	/**
+	 * @param overrides Properties replacing the defaults below, e.g. to use another database
+	 */
+	public static ConfigurableApplicationContext start(Map<String, Object> overrides) {
+		Map<String, Object> properties = new HashMap<>();
+		properties.put("spring.datasource.url", "jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1");
+		properties.put("spring.datasource.username", "sa");
+		properties.put("spring.datasource.password", "");
+		properties.put("spring.datasource.driverClassName", "org.h2.Driver");
+		properties.put("spring.batch.job.enabled", "false");
+		properties.put("spring.main.allow-bean-definition-overriding", "true");
+		properties.put("spring.jpa.properties.hibernate.search.enabled", "false");
+		properties.put("hapi.fhir.fhir_version", "R4");
+		properties.put("hapi.fhir.cql_enabled", "false");
+		properties.put("hapi.fhir.mdm_enabled", "false");
+		properties.putAll(overrides);
+
+		return new SpringApplicationBuilder(BenchmarkServer.class)
+			.web(WebApplicationType.NONE)
+			.properties(properties)
+			.run();
+	}
+}
@@ -0,0 +1,134 @@
+package starter.benchmark;
+
+import ca.uhn.fhir.jpa.api.dao.DaoRegistry;
+import ca.uhn.fhir.jpa.api.dao.IFhirResourceDao;
+import ca.uhn.fhir.jpa.api.dao.IFhirSystemDao;
+import ca.uhn.fhir.jpa.partition.SystemRequestDetails;
+import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
+import ca.uhn.fhir.rest.api.server.IBundleProvider;
+import ca.uhn.fhir.rest.param.TokenParam;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.instance.model.api.IIdType;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.Resource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import starter.generator.PhenopacketDatasetGenerator;
+import starter.generator.PhenopacketResourceFactory;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the create, read, search-by-HPO-code and transaction paths for phenopacket-profiled resources.
+ * <p>
+ * The database is loaded with a dataset from {@link PhenopacketDatasetGenerator} before measuring. Run with e.g.
+ * <code>java -jar benchmark/target/benchmarks.jar PhenopacketBenchmark -t 4 -p patients=10000</code>.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PhenopacketBenchmark {
+
+	@Param({"1000"})
+	private int patients;
+
+	@Param({"5"})
+	private int featuresPerPatient;
+
+	@Param({"1.0"})
+	private double featureSkew;
+
+	private ConfigurableApplicationContext context;
+	private DaoRegistry daoRegistry;
+	private IFhirResourceDao<Patient> patientDao;
+	private IFhirResourceDao<Observation> observationDao;
+	private IFhirSystemDao<Bundle, ?> systemDao;
+	private final ThreadLocal<PhenopacketResourceFactory> factory = ThreadLocal.withInitial(() -> new PhenopacketResourceFactory(new Random(), featureSkew));
+
+	@Setup(Level.Trial)
+	@SuppressWarnings("unchecked")
+	public void setUp() {
+		context = BenchmarkServer.start();
+		daoRegistry = context.getBean(DaoRegistry.class);
+		patientDao = daoRegistry.getResourceDao(Patient.class);
+		observationDao = daoRegistry.getResourceDao(Observation.class);
+		systemDao = (IFhirSystemDao<Bundle, ?>) daoRegistry.getSystemDao();
+
+		new PhenopacketDatasetGenerator()
+			.setPatients(patients)
+			.setMinFeatures(featuresPerPatient)
+			.setMaxFeatures(featuresPerPatient)
+			.setFeatureSkew(featureSkew)
+			.generate(resources -> {
+				for (Resource resource : resources) {
+					daoRegistry.getResourceDao(resource.fhirType()).update(resource);
+				}
+			});
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		context.close();
+	}
+
+	@Benchmark
+	public IIdType create() {
+		return observationDao.create(factory.get().phenotypicFeature(null, randomPatientReference(), factory.get().hpoCode(0))).getId();
+	}
+
+	@Benchmark
+	public Patient read() {
+		return patientDao.read(new IdType(randomPatientReference()));
+	}
+
+	@Benchmark
+	public List<IBaseResource> searchByHpoCode() {
+		SearchParameterMap map = SearchParameterMap.newSynchronous()
+			.add(Observation.SP_CODE, new TokenParam(PhenopacketResourceFactory.HPO_SYSTEM, factory.get().hpoCode(0)));
+		map.setCount(20);
+		IBundleProvider results = observationDao.search(map);
+		return results.getResources(0, 20);
+	}
+
+	@Benchmark
+	public Bundle transaction() {
+		Bundle bundle = new Bundle();
+		bundle.setType(Bundle.BundleType.TRANSACTION);
+		String patientFullUrl = IdType.newRandomUuid().getValue();
+		bundle.addEntry()
+			.setFullUrl(patientFullUrl)
+			.setResource(factory.get().individual(null))
+			.getRequest().setMethod(Bundle.HTTPVerb.POST).setUrl("Patient");
+		for (int i = 0; i < featuresPerPatient; i++) {
+			bundle.addEntry()
+				.setResource(factory.get().phenotypicFeature(null, patientFullUrl, factory.get().hpoCode(0)))
+				.getRequest().setMethod(Bundle.HTTPVerb.POST).setUrl("Observation");
+		}
+		return systemDao.transaction(new SystemRequestDetails(), bundle);
+	}
+
+	private String randomPatientReference() {
+		return "Patient/pp-" + ThreadLocalRandom.current().nextInt(patients);
+	}
+}
@@ -0,0 +1,89 @@
+package starter.benchmark;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.server.RestfulServer;
+import ca.uhn.fhir.rest.server.interceptor.ResponseHighlighterInterceptor;
+import ca.uhn.fhir.rest.server.provider.HashMapResourceProvider;
+import org.hl7.fhir.r4.model.Enumerations;
+import org.hl7.fhir.r4.model.Patient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockServletConfig;
+import starter.BrowserResponseHighlighterInterceptor;
+
+import javax.servlet.ServletException;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of plain JSON reads through the REST layer without the response highlighter (<code>none</code>), with it
+ * inspecting every response (<code>always</code>) and with it only seeing requests which may want HTML
+ * (<code>browser</code>, see <code>hapi.fhir.response_highlighter</code>).
+ * <p>
+ * The resource is served from memory so that the cost of the interceptors is not hidden behind the database.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ResponseHighlighterBenchmark {
+
+	@Param({"none", "always", "browser"})
+	private String highlighter;
+
+	@Param({Constants.CT_FHIR_JSON_NEW})
+	private String accept;
+
+	private RestfulServer server;
+
+	@Setup(Level.Trial)
+	public void setUp() throws ServletException {
+		FhirContext fhirContext = FhirContext.forR4Cached();
+		HashMapResourceProvider<Patient> patientProvider = new HashMapResourceProvider<>(fhirContext, Patient.class);
+		Patient patient = new Patient();
+		patient.setId("1");
+		patient.addName().setFamily("Doe").addGiven("Jane");
+		patient.setGender(Enumerations.AdministrativeGender.FEMALE);
+		patientProvider.store(patient);
+
+		server = new RestfulServer(fhirContext);
+		server.registerProvider(patientProvider);
+		if ("always".equals(highlighter)) {
+			server.registerInterceptor(new ResponseHighlighterInterceptor());
+		} else if ("browser".equals(highlighter)) {
+			server.registerInterceptor(new BrowserResponseHighlighterInterceptor(new ResponseHighlighterInterceptor()));
+		}
+		server.init(new MockServletConfig());
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		server.destroy();
+	}
+
+	@Benchmark
+	public MockHttpServletResponse read() throws ServletException, IOException {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/fhir/Patient/1");
+		request.setServletPath("/fhir");
+		request.addHeader(Constants.HEADER_ACCEPT, accept);
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		server.service(request, response);
+		return response;
+	}
+}
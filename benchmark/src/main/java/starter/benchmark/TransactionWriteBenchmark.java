@@ -0,0 +1,102 @@
+package starter.benchmark;
+
+import ca.uhn.fhir.jpa.api.dao.DaoRegistry;
+import ca.uhn.fhir.jpa.api.dao.IFhirSystemDao;
+import ca.uhn.fhir.jpa.partition.SystemRequestDetails;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Resource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import starter.generator.PhenopacketDatasetGenerator;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput of storing phenopacket transaction bundles, which is dominated by inserting search index rows, with
+ * the default and the write-optimized persistence settings (<code>hapi.fhir.write_optimized_persistence</code>).
+ * <p>
+ * Runs on H2 by default. To run on PostgreSQL, pass <code>-p database=postgresql</code> and point
+ * <code>-Dbenchmark.postgresql.url</code> (and <code>.username</code>/<code>.password</code>) at an empty database.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TransactionWriteBenchmark {
+
+	@Param({"h2"})
+	private String database;
+
+	@Param({"false", "true"})
+	private boolean writeOptimized;
+
+	@Param({"10"})
+	private int patientsPerBundle;
+
+	private ConfigurableApplicationContext context;
+	private IFhirSystemDao<Bundle, ?> systemDao;
+	private final AtomicLong seed = new AtomicLong();
+
+	@Setup(Level.Trial)
+	@SuppressWarnings("unchecked")
+	public void setUp() {
+		Map<String, Object> properties = new HashMap<>();
+		properties.put("hapi.fhir.write_optimized_persistence", Boolean.toString(writeOptimized));
+		if ("postgresql".equals(database)) {
+			properties.put("spring.datasource.url", System.getProperty("benchmark.postgresql.url", "jdbc:postgresql://localhost:5432/hapi_benchmark?reWriteBatchedInserts=true"));
+			properties.put("spring.datasource.username", System.getProperty("benchmark.postgresql.username", "hapi"));
+			properties.put("spring.datasource.password", System.getProperty("benchmark.postgresql.password", "hapi"));
+			properties.put("spring.datasource.driverClassName", "org.postgresql.Driver");
+			properties.put("spring.jpa.properties.hibernate.dialect", "ca.uhn.fhir.jpa.model.dialect.HapiFhirPostgres94Dialect");
+		}
+		context = BenchmarkServer.start(properties);
+		systemDao = (IFhirSystemDao<Bundle, ?>) context.getBean(DaoRegistry.class).getSystemDao();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		context.close();
+	}
+
+	/**
+	 * Each invocation stores a bundle of new individuals (with their features, disease and variants), so the result
+	 * multiplied by the resources per bundle is the resource insert throughput.
+	 */
+	@Benchmark
+	public Bundle transaction() {
+		Bundle bundle = new Bundle();
+		bundle.setType(Bundle.BundleType.TRANSACTION);
+		long bundleSeed = seed.incrementAndGet();
+		new PhenopacketDatasetGenerator()
+			.setPatients(patientsPerBundle)
+			.setSeed(bundleSeed)
+			.setIdPrefix("tx" + bundleSeed + "-")
+			.generate(resources -> {
+				for (Resource resource : resources) {
+					String url = resource.fhirType() + "/" + resource.getIdElement().getIdPart();
+					bundle.addEntry()
+						.setFullUrl(url)
+						.setResource(resource)
+						.getRequest().setMethod(Bundle.HTTPVerb.PUT).setUrl(url);
+				}
+			});
+		return systemDao.transaction(new SystemRequestDetails(), bundle);
+	}
+}
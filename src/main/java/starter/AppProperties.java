@@ -34,21 +34,31 @@ public class AppProperties {
   private Boolean enable_index_missing_fields = false;
   private Boolean enable_index_contained_resource = false;
   private Boolean enable_repository_validating_interceptor = false;
+  private Boolean reload_repository_validating_rules = true;
   private Boolean enforce_referential_integrity_on_delete = true;
   private Boolean enforce_referential_integrity_on_write = true;
   private Boolean etag_support_enabled = true;
+  private Boolean capability_statement_cache_enabled = false;
+  private ResourceCounts resource_counts = new ResourceCounts();
   private Boolean expunge_enabled = true;
   private Boolean fhirpath_interceptor_enabled = false;
+  private ResponseHighlighterMode response_highlighter = ResponseHighlighterMode.BROWSER;
   private Boolean filter_search_enabled = true;
   private Boolean graphql_enabled = false;
   private Boolean binary_storage_enabled = false;
   private Boolean bulk_export_enabled = false;
+  private Boolean bulk_import_enabled = false;
+  private BulkImport bulk_import = new BulkImport();
   private Boolean default_pretty_print = true;
   private Integer default_page_size = 20;
   private Integer max_binary_size = null;
   private Integer max_page_size = Integer.MAX_VALUE;
   private Integer defer_indexing_for_codesystems_of_size = 100;
   private Long retain_cached_searches_mins = 60L;
+  private HybridPaging hybrid_paging = new HybridPaging();
+  private Boolean keyset_paging_enabled = false;
+  private StreamingSearch streaming_search = new StreamingSearch();
+  private PageSizeGuard page_size_guard = new PageSizeGuard();
   private Long reuse_cached_search_results_millis = 60000L;
   private String server_address = null;
   private EncodingEnum default_encoding = EncodingEnum.JSON;
@@ -57,15 +67,20 @@ public class AppProperties {
   private List<String> supported_resource_types = new ArrayList<>();
   private List<Bundle.BundleType> allowed_bundle_types = null;
   private Boolean narrative_enabled = true;
+  private Narrative narrative = new Narrative();
 
   private Validation validation = new Validation();
   private Map<String, Tester> tester = null;
   private Logger logger = new Logger();
+  private Metrics metrics = new Metrics();
+  private SecondLevelCache second_level_cache = new SecondLevelCache();
+  private ResourceCache resource_cache = new ResourceCache();
   private Subscription subscription = new Subscription();
   private Cors cors = null;
   private Partitioning partitioning = null;
   private Boolean install_transitive_ig_dependencies = true;
   private Map<String, ImplementationGuide> implementationGuides = null;
+  private IgInstall ig_install = new IgInstall();
 
   private Boolean lastn_enabled = false;
   private NormalizedQuantitySearchLevel normalized_quantity_search_level = NormalizedQuantitySearchLevel.NORMALIZED_QUANTITY_SEARCH_NOT_SUPPORTED;
@@ -73,6 +88,7 @@ public class AppProperties {
   private Integer search_coord_core_pool_size = 20;
   private Integer search_coord_max_pool_size = 100;
   private Integer search_coord_queue_capacity = 200;
+  private SearchCoordinator search_coordinator = new SearchCoordinator();
   private Boolean use_apache_address_strategy = false;
   private Boolean use_apache_address_strategy_https = false;
 
@@ -116,6 +132,14 @@ public class AppProperties {
     this.implementationGuides = implementationGuides;
   }
 
+  public IgInstall getIg_install() {
+    return ig_install;
+  }
+
+  public void setIg_install(IgInstall ig_install) {
+    this.ig_install = ig_install;
+  }
+
   public Partitioning getPartitioning() {
     return partitioning;
   }
@@ -204,6 +228,30 @@ public class AppProperties {
     this.logger = logger;
   }
 
+  public Metrics getMetrics() {
+    return metrics;
+  }
+
+  public void setMetrics(Metrics metrics) {
+    this.metrics = metrics;
+  }
+
+  public SecondLevelCache getSecond_level_cache() {
+    return second_level_cache;
+  }
+
+  public void setSecond_level_cache(SecondLevelCache second_level_cache) {
+    this.second_level_cache = second_level_cache;
+  }
+
+  public ResourceCache getResource_cache() {
+    return resource_cache;
+  }
+
+  public void setResource_cache(ResourceCache resource_cache) {
+    this.resource_cache = resource_cache;
+  }
+
   public ClientIdStrategyEnum getClient_id_strategy() {
     return client_id_strategy;
   }
@@ -303,6 +351,14 @@ public class AppProperties {
 		enable_repository_validating_interceptor = theEnable_repository_validating_interceptor;
 	}
 
+	public Boolean getReload_repository_validating_rules() {
+		return reload_repository_validating_rules;
+	}
+
+	public void setReload_repository_validating_rules(Boolean reload_repository_validating_rules) {
+		this.reload_repository_validating_rules = reload_repository_validating_rules;
+	}
+
 	public Boolean getEnforce_referential_integrity_on_delete() {
     return enforce_referential_integrity_on_delete;
   }
@@ -329,6 +385,22 @@ public class AppProperties {
     this.etag_support_enabled = etag_support_enabled;
   }
 
+  public Boolean getCapability_statement_cache_enabled() {
+    return capability_statement_cache_enabled;
+  }
+
+  public void setCapability_statement_cache_enabled(Boolean capability_statement_cache_enabled) {
+    this.capability_statement_cache_enabled = capability_statement_cache_enabled;
+  }
+
+  public ResourceCounts getResource_counts() {
+    return resource_counts;
+  }
+
+  public void setResource_counts(ResourceCounts resource_counts) {
+    this.resource_counts = resource_counts;
+  }
+
   public Boolean getExpunge_enabled() {
     return expunge_enabled;
   }
@@ -345,6 +417,14 @@ public class AppProperties {
     this.fhirpath_interceptor_enabled = fhirpath_interceptor_enabled;
   }
 
+  public ResponseHighlighterMode getResponse_highlighter() {
+    return response_highlighter;
+  }
+
+  public void setResponse_highlighter(ResponseHighlighterMode response_highlighter) {
+    this.response_highlighter = response_highlighter;
+  }
+
   public Boolean getFilter_search_enabled() {
     return filter_search_enabled;
   }
@@ -377,6 +457,22 @@ public class AppProperties {
     this.bulk_export_enabled = bulk_export_enabled;
   }
 
+  public Boolean getBulk_import_enabled() {
+    return bulk_import_enabled;
+  }
+
+  public void setBulk_import_enabled(Boolean bulk_import_enabled) {
+    this.bulk_import_enabled = bulk_import_enabled;
+  }
+
+  public BulkImport getBulk_import() {
+    return bulk_import;
+  }
+
+  public void setBulk_import(BulkImport bulk_import) {
+    this.bulk_import = bulk_import;
+  }
+
   public EncodingEnum getDefault_encoding() {
     return default_encoding;
   }
@@ -417,6 +513,38 @@ public class AppProperties {
     this.retain_cached_searches_mins = retain_cached_searches_mins;
   }
 
+  public HybridPaging getHybrid_paging() {
+    return hybrid_paging;
+  }
+
+  public void setHybrid_paging(HybridPaging hybrid_paging) {
+    this.hybrid_paging = hybrid_paging;
+  }
+
+  public Boolean getKeyset_paging_enabled() {
+    return keyset_paging_enabled;
+  }
+
+  public void setKeyset_paging_enabled(Boolean keyset_paging_enabled) {
+    this.keyset_paging_enabled = keyset_paging_enabled;
+  }
+
+  public StreamingSearch getStreaming_search() {
+    return streaming_search;
+  }
+
+  public void setStreaming_search(StreamingSearch streaming_search) {
+    this.streaming_search = streaming_search;
+  }
+
+  public PageSizeGuard getPage_size_guard() {
+    return page_size_guard;
+  }
+
+  public void setPage_size_guard(PageSizeGuard page_size_guard) {
+    this.page_size_guard = page_size_guard;
+  }
+
   public Long getReuse_cached_search_results_millis() {
     return reuse_cached_search_results_millis;
   }
@@ -447,6 +575,14 @@ public class AppProperties {
     this.narrative_enabled = narrative_enabled;
   }
 
+  public Narrative getNarrative() {
+    return narrative;
+  }
+
+  public void setNarrative(Narrative narrative) {
+    this.narrative = narrative;
+  }
+
   public Boolean getLastn_enabled() {
     return lastn_enabled;
   }
@@ -481,6 +617,14 @@ public class AppProperties {
   	 this.search_coord_queue_capacity = search_coord_queue_capacity;
   }
 
+  public SearchCoordinator getSearch_coordinator() {
+    return search_coordinator;
+  }
+
+  public void setSearch_coordinator(SearchCoordinator search_coordinator) {
+    this.search_coordinator = search_coordinator;
+  }
+
 	public boolean getInstall_transitive_ig_dependencies() {
 		return install_transitive_ig_dependencies;
 	}
@@ -512,12 +656,23 @@ public class AppProperties {
 
   }
 
+  /**
+   * <code>always</code> lets the highlighter inspect every response, <code>browser</code> only the responses to
+   * requests which may want HTML and <code>disabled</code> does not register it (the tester renders responses itself)
+   */
+  public enum ResponseHighlighterMode {
+    ALWAYS, BROWSER, DISABLED
+  }
+
   public static class Logger {
 
     private String name = "fhirtest.access";
     private String error_format = "ERROR - ${requestVerb} ${requestUrl}";
-    private String format = "Path[${servletPath}] Source[${requestHeader.x-forwarded-for}] Operation[${operationType} ${operationName} ${idOrResourceName}] UA[${requestHeader.user-agent}] Params[${requestParameters}] ResponseEncoding[${responseEncodingNoDefault}] Operation[${operationType} ${operationName} ${idOrResourceName}] UA[${requestHeader.user-agent}] Params[${requestParameters}] ResponseEncoding[${responseEncodingNoDefault}]";
+    private String format = "Path[${servletPath}] Source[${requestHeader.x-forwarded-for}] Operation[${operationType} ${operationName} ${idOrResourceName}] UA[${requestHeader.user-agent}] Params[${requestParameters}] ResponseEncoding[${responseEncodingNoDefault}]";
     private Boolean log_exceptions = true;
+    private Boolean structured = false;
+    private String structured_name = "fhirtest.access.json";
+    private Integer structured_queue_size = 8192;
 
     public String getName() {
       return name;
@@ -550,6 +705,418 @@ public class AppProperties {
     public void setLog_exceptions(Boolean log_exceptions) {
       this.log_exceptions = log_exceptions;
     }
+
+    public Boolean getStructured() {
+      return structured;
+    }
+
+    public void setStructured(Boolean structured) {
+      this.structured = structured;
+    }
+
+    public String getStructured_name() {
+      return structured_name;
+    }
+
+    public void setStructured_name(String structured_name) {
+      this.structured_name = structured_name;
+    }
+
+    public Integer getStructured_queue_size() {
+      return structured_queue_size;
+    }
+
+    public void setStructured_queue_size(Integer structured_queue_size) {
+      this.structured_queue_size = structured_queue_size;
+    }
+  }
+
+  public static class BulkImport {
+
+    private String directory = "target/import";
+    private Integer parallelism = 4;
+    private Integer batch_size = 500;
+    private Boolean validate = false;
+    private Integer max_errors = 100;
+    private Long retain_jobs_mins = 60L;
+
+    public String getDirectory() {
+      return directory;
+    }
+
+    public void setDirectory(String directory) {
+      this.directory = directory;
+    }
+
+    public Integer getParallelism() {
+      return parallelism;
+    }
+
+    public void setParallelism(Integer parallelism) {
+      this.parallelism = parallelism;
+    }
+
+    public Integer getBatch_size() {
+      return batch_size;
+    }
+
+    public void setBatch_size(Integer batch_size) {
+      this.batch_size = batch_size;
+    }
+
+    public Boolean getValidate() {
+      return validate;
+    }
+
+    public void setValidate(Boolean validate) {
+      this.validate = validate;
+    }
+
+    public Integer getMax_errors() {
+      return max_errors;
+    }
+
+    public void setMax_errors(Integer max_errors) {
+      this.max_errors = max_errors;
+    }
+
+    public Long getRetain_jobs_mins() {
+      return retain_jobs_mins;
+    }
+
+    public void setRetain_jobs_mins(Long retain_jobs_mins) {
+      this.retain_jobs_mins = retain_jobs_mins;
+    }
+  }
+
+  public static class SecondLevelCache {
+
+    private Boolean enabled = false;
+    private Long max_entries_per_region = 10000L;
+    private Boolean query_cache = false;
+    private List<String> entities = new ArrayList<>(ImmutableList.of(
+      "ca.uhn.fhir.jpa.entity.TermCodeSystem",
+      "ca.uhn.fhir.jpa.entity.TermCodeSystemVersion",
+      "ca.uhn.fhir.jpa.entity.TermConcept",
+      "ca.uhn.fhir.jpa.entity.TermConceptDesignation",
+      "ca.uhn.fhir.jpa.entity.TermConceptProperty",
+      "ca.uhn.fhir.jpa.entity.TermValueSet",
+      "ca.uhn.fhir.jpa.entity.TermConceptMap"));
+
+    public Boolean getEnabled() {
+      return enabled;
+    }
+
+    public void setEnabled(Boolean enabled) {
+      this.enabled = enabled;
+    }
+
+    public Long getMax_entries_per_region() {
+      return max_entries_per_region;
+    }
+
+    public void setMax_entries_per_region(Long max_entries_per_region) {
+      this.max_entries_per_region = max_entries_per_region;
+    }
+
+    public Boolean getQuery_cache() {
+      return query_cache;
+    }
+
+    public void setQuery_cache(Boolean query_cache) {
+      this.query_cache = query_cache;
+    }
+
+    public List<String> getEntities() {
+      return entities;
+    }
+
+    public void setEntities(List<String> entities) {
+      this.entities = entities;
+    }
+  }
+
+  public static class Narrative {
+
+    private List<String> resource_types = new ArrayList<>();
+    private Long cache_max_bytes = 16777216L;
+    private Boolean generate_on_write = false;
+
+    public List<String> getResource_types() {
+      return resource_types;
+    }
+
+    public void setResource_types(List<String> resource_types) {
+      this.resource_types = resource_types;
+    }
+
+    public Long getCache_max_bytes() {
+      return cache_max_bytes;
+    }
+
+    public void setCache_max_bytes(Long cache_max_bytes) {
+      this.cache_max_bytes = cache_max_bytes;
+    }
+
+    public Boolean getGenerate_on_write() {
+      return generate_on_write;
+    }
+
+    public void setGenerate_on_write(Boolean generate_on_write) {
+      this.generate_on_write = generate_on_write;
+    }
+  }
+
+  public static class HybridPaging {
+
+    private Boolean enabled = false;
+    private Integer in_memory_threshold = 20;
+    private Integer max_in_memory_searches = 1000;
+    private Integer retain_in_memory_mins = 10;
+
+    public Boolean getEnabled() {
+      return enabled;
+    }
+
+    public void setEnabled(Boolean enabled) {
+      this.enabled = enabled;
+    }
+
+    public Integer getIn_memory_threshold() {
+      return in_memory_threshold;
+    }
+
+    public void setIn_memory_threshold(Integer in_memory_threshold) {
+      this.in_memory_threshold = in_memory_threshold;
+    }
+
+    public Integer getMax_in_memory_searches() {
+      return max_in_memory_searches;
+    }
+
+    public void setMax_in_memory_searches(Integer max_in_memory_searches) {
+      this.max_in_memory_searches = max_in_memory_searches;
+    }
+
+    public Integer getRetain_in_memory_mins() {
+      return retain_in_memory_mins;
+    }
+
+    public void setRetain_in_memory_mins(Integer retain_in_memory_mins) {
+      this.retain_in_memory_mins = retain_in_memory_mins;
+    }
+  }
+
+  public static class StreamingSearch {
+
+    private Boolean enabled = false;
+    private Integer min_count = 1000;
+    private Integer chunk_size = 100;
+
+    public Boolean getEnabled() {
+      return enabled;
+    }
+
+    public void setEnabled(Boolean enabled) {
+      this.enabled = enabled;
+    }
+
+    public Integer getMin_count() {
+      return min_count;
+    }
+
+    public void setMin_count(Integer min_count) {
+      this.min_count = min_count;
+    }
+
+    public Integer getChunk_size() {
+      return chunk_size;
+    }
+
+    public void setChunk_size(Integer chunk_size) {
+      this.chunk_size = chunk_size;
+    }
+  }
+
+  public static class PageSizeGuard {
+
+    private Boolean enabled = false;
+    private Long max_request_bytes = 32L * 1024 * 1024;
+    private Long max_total_bytes = 256L * 1024 * 1024;
+    private Long default_resource_bytes = 4096L;
+
+    public Boolean getEnabled() {
+      return enabled;
+    }
+
+    public void setEnabled(Boolean enabled) {
+      this.enabled = enabled;
+    }
+
+    public Long getMax_request_bytes() {
+      return max_request_bytes;
+    }
+
+    public void setMax_request_bytes(Long max_request_bytes) {
+      this.max_request_bytes = max_request_bytes;
+    }
+
+    public Long getMax_total_bytes() {
+      return max_total_bytes;
+    }
+
+    public void setMax_total_bytes(Long max_total_bytes) {
+      this.max_total_bytes = max_total_bytes;
+    }
+
+    public Long getDefault_resource_bytes() {
+      return default_resource_bytes;
+    }
+
+    public void setDefault_resource_bytes(Long default_resource_bytes) {
+      this.default_resource_bytes = default_resource_bytes;
+    }
+  }
+
+  public static class SearchCoordinator {
+
+    private Boolean adaptive_enabled = false;
+    private Integer resize_interval_seconds = 5;
+    private Integer shed_queue_depth = 100;
+    private Integer max_retry_after_seconds = 30;
+
+    public Boolean getAdaptive_enabled() {
+      return adaptive_enabled;
+    }
+
+    public void setAdaptive_enabled(Boolean adaptive_enabled) {
+      this.adaptive_enabled = adaptive_enabled;
+    }
+
+    public Integer getResize_interval_seconds() {
+      return resize_interval_seconds;
+    }
+
+    public void setResize_interval_seconds(Integer resize_interval_seconds) {
+      this.resize_interval_seconds = resize_interval_seconds;
+    }
+
+    public Integer getShed_queue_depth() {
+      return shed_queue_depth;
+    }
+
+    public void setShed_queue_depth(Integer shed_queue_depth) {
+      this.shed_queue_depth = shed_queue_depth;
+    }
+
+    public Integer getMax_retry_after_seconds() {
+      return max_retry_after_seconds;
+    }
+
+    public void setMax_retry_after_seconds(Integer max_retry_after_seconds) {
+      this.max_retry_after_seconds = max_retry_after_seconds;
+    }
+  }
+
+  public static class ResourceCounts {
+
+    /**
+     * <code>request</code> lets the server count resources when it builds the CapabilityStatement,
+     * <code>background</code> maintains the counts off the request path and <code>disabled</code> omits them
+     */
+    public enum Mode {
+      REQUEST, BACKGROUND, DISABLED
+    }
+
+    private Mode mode = Mode.REQUEST;
+    private Integer refresh_interval_seconds = 600;
+
+    public Mode getMode() {
+      return mode;
+    }
+
+    public void setMode(Mode mode) {
+      this.mode = mode;
+    }
+
+    public Integer getRefresh_interval_seconds() {
+      return refresh_interval_seconds;
+    }
+
+    public void setRefresh_interval_seconds(Integer refresh_interval_seconds) {
+      this.refresh_interval_seconds = refresh_interval_seconds;
+    }
+  }
+
+  public static class ResourceCache {
+
+    private Boolean enabled = false;
+    private Long max_bytes = 67108864L;
+    private Integer max_entry_bytes = 1048576;
+    private List<String> resource_types = new ArrayList<>();
+    private Boolean pre_serialize_on_write = false;
+
+    public Boolean getEnabled() {
+      return enabled;
+    }
+
+    public void setEnabled(Boolean enabled) {
+      this.enabled = enabled;
+    }
+
+    public Long getMax_bytes() {
+      return max_bytes;
+    }
+
+    public void setMax_bytes(Long max_bytes) {
+      this.max_bytes = max_bytes;
+    }
+
+    public Integer getMax_entry_bytes() {
+      return max_entry_bytes;
+    }
+
+    public void setMax_entry_bytes(Integer max_entry_bytes) {
+      this.max_entry_bytes = max_entry_bytes;
+    }
+
+    public List<String> getResource_types() {
+      return resource_types;
+    }
+
+    public void setResource_types(List<String> resource_types) {
+      this.resource_types = resource_types;
+    }
+
+    public Boolean getPre_serialize_on_write() {
+      return pre_serialize_on_write;
+    }
+
+    public void setPre_serialize_on_write(Boolean pre_serialize_on_write) {
+      this.pre_serialize_on_write = pre_serialize_on_write;
+    }
+  }
+
+  public static class Metrics {
+
+    private Boolean enabled = false;
+    private String scrape_path = "/metrics";
+
+    public Boolean getEnabled() {
+      return enabled;
+    }
+
+    public void setEnabled(Boolean enabled) {
+      this.enabled = enabled;
+    }
+
+    public String getScrape_path() {
+      return scrape_path;
+    }
+
+    public void setScrape_path(String scrape_path) {
+      this.scrape_path = scrape_path;
+    }
   }
 
 
@@ -624,10 +1191,104 @@ public class AppProperties {
     }
   }
 
+  public static class IgInstall {
+
+    private Integer parallelism = 4;
+    private Boolean skip_unchanged = false;
+    private String ledger_file = null;
+    private Boolean async = false;
+    private Integer retry_after_seconds = 30;
+    private String package_cache_dir = null;
+    private Boolean offline = false;
+    private String registry_url = "https://packages.fhir.org";
+    private Boolean refresh_url_packages = false;
+
+    public Integer getParallelism() {
+      return parallelism;
+    }
+
+    public void setParallelism(Integer parallelism) {
+      this.parallelism = parallelism;
+    }
+
+    public Boolean getSkip_unchanged() {
+      return skip_unchanged;
+    }
+
+    public void setSkip_unchanged(Boolean skip_unchanged) {
+      this.skip_unchanged = skip_unchanged;
+    }
+
+    public String getLedger_file() {
+      return ledger_file;
+    }
+
+    public void setLedger_file(String ledger_file) {
+      this.ledger_file = ledger_file;
+    }
+
+    public Boolean getAsync() {
+      return async;
+    }
+
+    public void setAsync(Boolean async) {
+      this.async = async;
+    }
+
+    public Integer getRetry_after_seconds() {
+      return retry_after_seconds;
+    }
+
+    public void setRetry_after_seconds(Integer retry_after_seconds) {
+      this.retry_after_seconds = retry_after_seconds;
+    }
+
+    public String getPackage_cache_dir() {
+      return package_cache_dir;
+    }
+
+    public void setPackage_cache_dir(String package_cache_dir) {
+      this.package_cache_dir = package_cache_dir;
+    }
+
+    public Boolean getOffline() {
+      return offline;
+    }
+
+    public void setOffline(Boolean offline) {
+      this.offline = offline;
+    }
+
+    public String getRegistry_url() {
+      return registry_url;
+    }
+
+    public void setRegistry_url(String registry_url) {
+      this.registry_url = registry_url;
+    }
+
+    public Boolean getRefresh_url_packages() {
+      return refresh_url_packages;
+    }
+
+    public void setRefresh_url_packages(Boolean refresh_url_packages) {
+      this.refresh_url_packages = refresh_url_packages;
+    }
+  }
+
   public static class Validation {
 
     private Boolean requests_enabled = false;
     private Boolean responses_enabled = false;
+    private Boolean request_cache_enabled = false;
+    private Long request_cache_max_bytes = 64L * 1024 * 1024;
+    private Long request_cache_expire_mins = 10L;
+    private Boolean responses_async = false;
+    private Double responses_sample_rate = 0.01;
+    private Integer responses_threads = 2;
+    private Integer responses_queue_capacity = 100;
+    private Boolean warm_up_enabled = false;
+    private Integer warm_up_parallelism = 4;
 
     public Boolean getRequests_enabled() {
       return requests_enabled;
@@ -644,6 +1305,78 @@ public class AppProperties {
     public void setResponses_enabled(Boolean responses_enabled) {
       this.responses_enabled = responses_enabled;
     }
+
+    public Boolean getRequest_cache_enabled() {
+      return request_cache_enabled;
+    }
+
+    public void setRequest_cache_enabled(Boolean request_cache_enabled) {
+      this.request_cache_enabled = request_cache_enabled;
+    }
+
+    public Long getRequest_cache_max_bytes() {
+      return request_cache_max_bytes;
+    }
+
+    public void setRequest_cache_max_bytes(Long request_cache_max_bytes) {
+      this.request_cache_max_bytes = request_cache_max_bytes;
+    }
+
+    public Long getRequest_cache_expire_mins() {
+      return request_cache_expire_mins;
+    }
+
+    public void setRequest_cache_expire_mins(Long request_cache_expire_mins) {
+      this.request_cache_expire_mins = request_cache_expire_mins;
+    }
+
+    public Boolean getResponses_async() {
+      return responses_async;
+    }
+
+    public void setResponses_async(Boolean responses_async) {
+      this.responses_async = responses_async;
+    }
+
+    public Double getResponses_sample_rate() {
+      return responses_sample_rate;
+    }
+
+    public void setResponses_sample_rate(Double responses_sample_rate) {
+      this.responses_sample_rate = responses_sample_rate;
+    }
+
+    public Integer getResponses_threads() {
+      return responses_threads;
+    }
+
+    public void setResponses_threads(Integer responses_threads) {
+      this.responses_threads = responses_threads;
+    }
+
+    public Integer getResponses_queue_capacity() {
+      return responses_queue_capacity;
+    }
+
+    public void setResponses_queue_capacity(Integer responses_queue_capacity) {
+      this.responses_queue_capacity = responses_queue_capacity;
+    }
+
+    public Boolean getWarm_up_enabled() {
+      return warm_up_enabled;
+    }
+
+    public void setWarm_up_enabled(Boolean warm_up_enabled) {
+      this.warm_up_enabled = warm_up_enabled;
+    }
+
+    public Integer getWarm_up_parallelism() {
+      return warm_up_parallelism;
+    }
+
+    public void setWarm_up_parallelism(Integer warm_up_parallelism) {
+      this.warm_up_parallelism = warm_up_parallelism;
+    }
   }
 
   public static class Partitioning {
@@ -12,12 +12,11 @@ import ca.uhn.fhir.jpa.api.dao.IFhirSystemDao;
 import ca.uhn.fhir.jpa.binstore.BinaryStorageInterceptor;
 import ca.uhn.fhir.jpa.bulk.export.provider.BulkDataExportProvider;
 import ca.uhn.fhir.jpa.interceptor.CascadingDeleteInterceptor;
-import ca.uhn.fhir.jpa.packages.IPackageInstallerSvc;
-import ca.uhn.fhir.jpa.packages.PackageInstallationSpec;
 import ca.uhn.fhir.jpa.partition.PartitionManagementProvider;
 import ca.uhn.fhir.jpa.provider.*;
 import ca.uhn.fhir.jpa.provider.dstu3.JpaConformanceProviderDstu3;
 import ca.uhn.fhir.jpa.search.DatabaseBackedPagingProvider;
+import ca.uhn.fhir.jpa.searchparam.MatchUrlService;
 import ca.uhn.fhir.jpa.subscription.util.SubscriptionDebugLogInterceptor;
 import ca.uhn.fhir.mdm.provider.MdmProviderLoader;
 import ca.uhn.fhir.narrative.DefaultThymeleafNarrativeGenerator;
@@ -33,15 +32,42 @@ import ca.uhn.fhir.rest.server.util.ISearchParamRegistry;
 import ca.uhn.fhir.validation.IValidatorModule;
 import ca.uhn.fhir.validation.ResultSeverityEnum;
 import com.google.common.base.Strings;
-import com.google.common.collect.ImmutableList;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
 import org.hl7.fhir.r4.model.Bundle.BundleType;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationContext;
 import org.springframework.http.HttpHeaders;
 import org.springframework.web.cors.CorsConfiguration;
-
+import starter.bulk.BulkImportProvider;
+import starter.bulk.BulkImportSvc;
+import starter.cache.CapabilityStatementCacheInterceptor;
+import starter.cache.ResourceCacheInterceptor;
+import starter.cache.ResourceCountTracker;
+import starter.cache.SecondLevelCacheInvalidator;
+import starter.ig.ImplementationGuideInstaller;
+import starter.ig.ReadinessInterceptor;
+import starter.ig.ReadinessProvider;
+import starter.logging.StructuredAccessLogInterceptor;
+import starter.metrics.FhirMetricsInterceptor;
+import starter.narrative.CachingNarrativeGenerator;
+import starter.search.HybridPagingProvider;
+import starter.search.KeysetPagingInterceptor;
+import starter.search.PageSizeGuardInterceptor;
+import starter.search.SearchCoordinatorExecutor;
+import starter.search.SearchLoadSheddingInterceptor;
+import starter.search.StreamingSearchInterceptor;
+import starter.validation.CachingValidatorModule;
+import starter.validation.SamplingResponseValidatingInterceptor;
+import starter.validation.ValidationSupportWarmer;
+
+import javax.persistence.EntityManagerFactory;
 import javax.servlet.ServletException;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 public class BaseJpaRestfulServer extends RestfulServer {
@@ -73,13 +99,17 @@ public class BaseJpaRestfulServer extends RestfulServer {
   @Autowired
   BulkDataExportProvider bulkDataExportProvider;
   @Autowired
+  BulkImportSvc bulkImportSvc;
+  @Autowired
+  EntityManagerFactory entityManagerFactory;
+  @Autowired
   PartitionManagementProvider partitionManagementProvider;
   @Autowired
   ValueSetOperationProvider valueSetOperationProvider;
   @Autowired
   BinaryStorageInterceptor binaryStorageInterceptor;
   @Autowired
-  IPackageInstallerSvc packageInstallerSvc;
+  ImplementationGuideInstaller implementationGuideInstaller;
   @Autowired
   AppProperties appProperties;
   @Autowired
@@ -91,13 +121,24 @@ public class BaseJpaRestfulServer extends RestfulServer {
   Optional<CqlProviderLoader> cqlProviderLoader;
   @Autowired
   Optional<MdmProviderLoader> mdmProviderProvider;
+  @Autowired
+  Optional<PrometheusMeterRegistry> meterRegistry;
 
   @Autowired
   private IValidationSupport myValidationSupport;
 
+  // Stops the executors started by the interceptors, some of which are registered after an asynchronous IG install
+  private final List<Runnable> myShutdownTasks = new CopyOnWriteArrayList<>();
+
   public BaseJpaRestfulServer() {
   }
 
+  @Override
+  public void destroy() {
+    super.destroy();
+    myShutdownTasks.forEach(Runnable::run);
+  }
+
   @SuppressWarnings("unchecked")
   @Override
   protected void initialize() throws ServletException {
@@ -136,12 +177,17 @@ public class BaseJpaRestfulServer extends RestfulServer {
      * provide further customization of your server's CapabilityStatement
      */
 
+    // Unless counts are requested on the request path, the server does not count resources itself
+    AppProperties.ResourceCounts resourceCounts = appProperties.getResource_counts();
+    boolean includeResourceCounts = resourceCounts.getMode() == AppProperties.ResourceCounts.Mode.REQUEST;
+
     FhirVersionEnum fhirVersion = fhirSystemDao.getContext().getVersion().getVersion();
     if (fhirVersion == FhirVersionEnum.DSTU2) {
 
       JpaConformanceProviderDstu2 confProvider = new JpaConformanceProviderDstu2(this, fhirSystemDao,
         daoConfig);
       confProvider.setImplementationDescription("HAPI FHIR DSTU2 Server");
+      confProvider.setIncludeResourceCounts(includeResourceCounts);
       setServerConformanceProvider(confProvider);
     } else {
       if (fhirVersion == FhirVersionEnum.DSTU3) {
@@ -149,18 +195,21 @@ public class BaseJpaRestfulServer extends RestfulServer {
         JpaConformanceProviderDstu3 confProvider = new JpaConformanceProviderDstu3(this, fhirSystemDao,
           daoConfig, searchParamRegistry);
         confProvider.setImplementationDescription("HAPI FHIR DSTU3 Server");
+        confProvider.setIncludeResourceCounts(includeResourceCounts);
         setServerConformanceProvider(confProvider);
       } else if (fhirVersion == FhirVersionEnum.R4) {
 
 				JpaCapabilityStatementProvider confProvider = new JpaCapabilityStatementProvider(this, fhirSystemDao,
 					daoConfig, searchParamRegistry, myValidationSupport);
         confProvider.setImplementationDescription("HAPI FHIR R4 Server");
+        confProvider.setIncludeResourceCounts(includeResourceCounts);
         setServerConformanceProvider(confProvider);
       } else if (fhirVersion == FhirVersionEnum.R5) {
 
 				JpaCapabilityStatementProvider confProvider = new JpaCapabilityStatementProvider(this, fhirSystemDao,
 					daoConfig, searchParamRegistry, myValidationSupport);
         confProvider.setImplementationDescription("HAPI FHIR R5 Server");
+        confProvider.setIncludeResourceCounts(includeResourceCounts);
         setServerConformanceProvider(confProvider);
       } else {
         throw new IllegalStateException();
@@ -174,15 +223,47 @@ public class BaseJpaRestfulServer extends RestfulServer {
     if (appProperties.getEtag_support_enabled() == false)
       setETagSupport(ETagSupportEnum.DISABLED);
 
+    ResourceCountTracker resourceCountTracker = null;
+    if (resourceCounts.getMode() == AppProperties.ResourceCounts.Mode.BACKGROUND) {
+      resourceCountTracker = new ResourceCountTracker(getFhirContext(), daoRegistry, resourceCounts.getRefresh_interval_seconds());
+      registerInterceptor(resourceCountTracker);
+      // Storage hooks, here and below, are registered with the JPA interceptor service rather than the server, so
+      // that writes which do not come in through the REST API (e.g. bulk imports) are seen too
+      interceptorService.registerInterceptor(resourceCountTracker.getStorageInterceptor());
+      resourceCountTracker.start();
+      myShutdownTasks.add(resourceCountTracker::shutdown);
+    }
+
+    if (appProperties.getCapability_statement_cache_enabled()) {
+      CapabilityStatementCacheInterceptor capabilityStatementCacheInterceptor = new CapabilityStatementCacheInterceptor(getFhirContext(), this, searchParamRegistry, resourceCountTracker);
+      meterRegistry.ifPresent(registry -> {
+        FunctionCounter.builder("fhir.server.metadata.cache.hits", capabilityStatementCacheInterceptor, CapabilityStatementCacheInterceptor::getHitCount).register(registry);
+        FunctionCounter.builder("fhir.server.metadata.cache.misses", capabilityStatementCacheInterceptor, CapabilityStatementCacheInterceptor::getMissCount).register(registry);
+      });
+      registerInterceptor(capabilityStatementCacheInterceptor);
+    }
+
 
     /*
      * This server tries to dynamically generate narratives
      */
     FhirContext ctx = getFhirContext();
-    INarrativeGenerator theNarrativeGenerator =
-      appProperties.getNarrative_enabled() ?
-      new DefaultThymeleafNarrativeGenerator() :
-      new NullNarrativeGenerator();
+    INarrativeGenerator theNarrativeGenerator;
+    if (appProperties.getNarrative_enabled()) {
+      AppProperties.Narrative narrative = appProperties.getNarrative();
+      CachingNarrativeGenerator cachingNarrativeGenerator = new CachingNarrativeGenerator(ctx, new DefaultThymeleafNarrativeGenerator(),
+        narrative.getResource_types(), narrative.getCache_max_bytes());
+      meterRegistry.ifPresent(registry -> {
+        FunctionCounter.builder("fhir.narrative.cache.hits", cachingNarrativeGenerator, CachingNarrativeGenerator::getHitCount).register(registry);
+        FunctionCounter.builder("fhir.narrative.cache.misses", cachingNarrativeGenerator, CachingNarrativeGenerator::getMissCount).register(registry);
+      });
+      if (narrative.getGenerate_on_write()) {
+        interceptorService.registerInterceptor(cachingNarrativeGenerator.getStorageInterceptor());
+      }
+      theNarrativeGenerator = cachingNarrativeGenerator;
+    } else {
+      theNarrativeGenerator = new NullNarrativeGenerator();
+    }
     ctx.setNarrativeGenerator(theNarrativeGenerator);
 
     /*
@@ -204,13 +285,91 @@ public class BaseJpaRestfulServer extends RestfulServer {
 
     setPagingProvider(databaseBackedPagingProvider);
 
+    /*
+     * Small searches can optionally skip the database search cache, see HybridPagingProvider
+     */
+    if (databaseBackedPagingProvider instanceof HybridPagingProvider) {
+      HybridPagingProvider hybridPagingProvider = (HybridPagingProvider) databaseBackedPagingProvider;
+      interceptorService.registerInterceptor(hybridPagingProvider.getStorageInterceptor());
+      meterRegistry.ifPresent(registry -> {
+        FunctionCounter.builder("fhir.search.paging.in.memory", hybridPagingProvider, HybridPagingProvider::getInMemorySearchCount).register(registry);
+        FunctionCounter.builder("fhir.search.paging.persisted", hybridPagingProvider, HybridPagingProvider::getPersistedSearchCount).register(registry);
+      });
+    }
+
+    /*
+     * Reject new searches early while the adaptive search coordinator pool is saturated, and
+     * report how busy it is. This comes before the interceptors which answer searches themselves.
+     */
+    myApplicationContext.getBeanProvider(SearchCoordinatorExecutor.class).ifAvailable(searchCoordinatorExecutor -> {
+      registerInterceptor(new SearchLoadSheddingInterceptor(searchCoordinatorExecutor));
+      meterRegistry.ifPresent(registry -> {
+        Gauge.builder("fhir.search.coordinator.queue.depth", searchCoordinatorExecutor, SearchCoordinatorExecutor::getQueueDepth).register(registry);
+        Gauge.builder("fhir.search.coordinator.active", searchCoordinatorExecutor, SearchCoordinatorExecutor::getActiveCount).register(registry);
+        Gauge.builder("fhir.search.coordinator.pool.size", searchCoordinatorExecutor, SearchCoordinatorExecutor::getPoolSize).register(registry);
+        Gauge.builder("fhir.search.coordinator.core.pool.size", searchCoordinatorExecutor, SearchCoordinatorExecutor::getCorePoolSize).register(registry);
+        FunctionTimer.builder("fhir.search.coordinator.wait", searchCoordinatorExecutor, SearchCoordinatorExecutor::getStartedCount, SearchCoordinatorExecutor::getTotalWaitMillis, TimeUnit.MILLISECONDS).register(registry);
+        FunctionCounter.builder("fhir.search.coordinator.rejected", searchCoordinatorExecutor, SearchCoordinatorExecutor::getRejectedCount).register(registry);
+        FunctionCounter.builder("fhir.search.coordinator.shed", searchCoordinatorExecutor, SearchCoordinatorExecutor::getShedCount).register(registry);
+      });
+      // Also stops the pool resizer, the context shutting the bean down again later is a no-op
+      myShutdownTasks.add(searchCoordinatorExecutor::shutdown);
+    });
+
+    /*
+     * Large search pages can optionally be written to the response as they are loaded, instead of
+     * building the whole Bundle in memory first
+     */
+    AppProperties.StreamingSearch streamingSearch = appProperties.getStreaming_search();
+    StreamingSearchInterceptor streamingSearchInterceptor = null;
+    if (streamingSearch.getEnabled()) {
+      streamingSearchInterceptor = new StreamingSearchInterceptor(ctx, daoRegistry, myApplicationContext.getBean(MatchUrlService.class), streamingSearch.getMin_count(), streamingSearch.getChunk_size());
+    }
+
+    /*
+     * Search page sizes can optionally be limited to a memory budget, which comes before the
+     * interceptors below so that they see the limited page size
+     */
+    AppProperties.PageSizeGuard pageSizeGuard = appProperties.getPage_size_guard();
+    if (pageSizeGuard.getEnabled()) {
+      PageSizeGuardInterceptor pageSizeGuardInterceptor = new PageSizeGuardInterceptor(ctx, pageSizeGuard.getMax_request_bytes(),
+        pageSizeGuard.getMax_total_bytes(), pageSizeGuard.getDefault_resource_bytes(), streamingSearchInterceptor);
+      registerInterceptor(pageSizeGuardInterceptor);
+      meterRegistry.ifPresent(registry -> {
+        Gauge.builder("fhir.search.page.reserved.bytes", pageSizeGuardInterceptor, PageSizeGuardInterceptor::getReservedBytes).register(registry);
+        FunctionCounter.builder("fhir.search.page.clamped", pageSizeGuardInterceptor, PageSizeGuardInterceptor::getRequestClampedCount).tag("budget", "request").register(registry);
+        FunctionCounter.builder("fhir.search.page.clamped", pageSizeGuardInterceptor, PageSizeGuardInterceptor::getTotalClampedCount).tag("budget", "total").register(registry);
+      });
+    }
+
+    /*
+     * Searches sorted by _lastUpdated can optionally be paged with a cursor, which keeps the
+     * cost of deep pages constant
+     */
+    if (appProperties.getKeyset_paging_enabled()) {
+      registerInterceptor(new KeysetPagingInterceptor(ctx));
+    }
+
+    if (streamingSearchInterceptor != null) {
+      registerInterceptor(streamingSearchInterceptor);
+    }
+
     /*
      * This interceptor formats the output using nice colourful
      * HTML output when the request is detected to come from a
-     * browser.
+     * browser. By default, requests which cannot want HTML do not
+     * go through it at all.
      */
-    ResponseHighlighterInterceptor responseHighlighterInterceptor = new ResponseHighlighterInterceptor();
-    this.registerInterceptor(responseHighlighterInterceptor);
+    switch (appProperties.getResponse_highlighter()) {
+      case ALWAYS:
+        this.registerInterceptor(new ResponseHighlighterInterceptor());
+        break;
+      case BROWSER:
+        this.registerInterceptor(new BrowserResponseHighlighterInterceptor(new ResponseHighlighterInterceptor()));
+        break;
+      case DISABLED:
+        break;
+    }
 
     if (appProperties.getFhirpath_interceptor_enabled()) {
       registerInterceptor(new FhirPathFilterInterceptor());
@@ -219,12 +378,26 @@ public class BaseJpaRestfulServer extends RestfulServer {
     /*
      * Add some logging for each request
      */
-    LoggingInterceptor loggingInterceptor = new LoggingInterceptor();
-    loggingInterceptor.setLoggerName(appProperties.getLogger().getName());
-    loggingInterceptor.setMessageFormat(appProperties.getLogger().getFormat());
-    loggingInterceptor.setErrorMessageFormat(appProperties.getLogger().getError_format());
-    loggingInterceptor.setLogExceptions(appProperties.getLogger().getLog_exceptions());
-    this.registerInterceptor(loggingInterceptor);
+    AppProperties.Logger logger = appProperties.getLogger();
+    if (logger.getStructured()) {
+      StructuredAccessLogInterceptor accessLogInterceptor = new StructuredAccessLogInterceptor(logger.getStructured_name(), logger.getFormat(), logger.getStructured_queue_size());
+      meterRegistry.ifPresent(registry -> FunctionCounter.builder("fhir.server.access.log.dropped", accessLogInterceptor, StructuredAccessLogInterceptor::getDroppedCount).register(registry));
+      this.registerInterceptor(accessLogInterceptor);
+      accessLogInterceptor.start();
+      myShutdownTasks.add(accessLogInterceptor::shutdown);
+    } else {
+      LoggingInterceptor loggingInterceptor = new LoggingInterceptor();
+      loggingInterceptor.setLoggerName(logger.getName());
+      loggingInterceptor.setMessageFormat(logger.getFormat());
+      loggingInterceptor.setErrorMessageFormat(logger.getError_format());
+      loggingInterceptor.setLogExceptions(logger.getLog_exceptions());
+      this.registerInterceptor(loggingInterceptor);
+    }
+
+    /*
+     * Record per-operation metrics for each request, if enabled
+     */
+    meterRegistry.ifPresent(registry -> registerInterceptor(new FhirMetricsInterceptor(ctx, registry)));
 
     /*
      * If you are hosting this server at a specific DNS name, the server will try to
@@ -308,6 +481,26 @@ public class BaseJpaRestfulServer extends RestfulServer {
       getInterceptorService().registerInterceptor(cascadingDeleteInterceptor);
     }
 
+    // Second-level cache
+    if (appProperties.getSecond_level_cache().getEnabled()) {
+      interceptorService.registerInterceptor(new SecondLevelCacheInvalidator(ctx, entityManagerFactory, appProperties.getSecond_level_cache().getEntities()));
+    }
+
+    // Read cache, the cache keys do not include the partition so it is not used on partitioned servers
+    AppProperties.ResourceCache resourceCache = appProperties.getResource_cache();
+    if (resourceCache.getEnabled() && appProperties.getPartitioning() == null) {
+      ResourceCacheInterceptor resourceCacheInterceptor = new ResourceCacheInterceptor(ctx, resourceCache.getMax_bytes(), resourceCache.getMax_entry_bytes(),
+        resourceCache.getResource_types(), resourceCache.getPre_serialize_on_write(), appProperties.getDefault_pretty_print());
+      meterRegistry.ifPresent(registry -> {
+        FunctionCounter.builder("fhir.server.read.cache.hits", resourceCacheInterceptor, ResourceCacheInterceptor::getHitCount).register(registry);
+        FunctionCounter.builder("fhir.server.read.cache.misses", resourceCacheInterceptor, ResourceCacheInterceptor::getMissCount).register(registry);
+        FunctionCounter.builder("fhir.server.read.cache.bypassed", resourceCacheInterceptor, ResourceCacheInterceptor::getBypassCount).register(registry);
+        FunctionCounter.builder("fhir.server.read.cache.evictions", resourceCacheInterceptor, ResourceCacheInterceptor::getEvictionCount).register(registry);
+      });
+      registerInterceptor(resourceCacheInterceptor);
+      interceptorService.registerInterceptor(resourceCacheInterceptor.getStorageInterceptor());
+    }
+
     // Binary Storage
     if (appProperties.getBinary_storage_enabled()) {
       getInterceptorService().registerInterceptor(binaryStorageInterceptor);
@@ -317,16 +510,41 @@ public class BaseJpaRestfulServer extends RestfulServer {
 
     if (validatorModule != null) {
       if (appProperties.getValidation().getRequests_enabled()) {
+        IValidatorModule requestValidatorModule = validatorModule;
+        if (appProperties.getValidation().getRequest_cache_enabled()) {
+          AppProperties.Validation validation = appProperties.getValidation();
+          CachingValidatorModule cachingValidatorModule = new CachingValidatorModule(ctx, validatorModule, validation.getRequest_cache_max_bytes(), validation.getRequest_cache_expire_mins());
+          interceptorService.registerInterceptor(cachingValidatorModule);
+          meterRegistry.ifPresent(registry -> {
+            FunctionCounter.builder("fhir.validation.request.cache.hits", cachingValidatorModule, CachingValidatorModule::getHitCount).register(registry);
+            FunctionCounter.builder("fhir.validation.request.cache.misses", cachingValidatorModule, CachingValidatorModule::getMissCount).register(registry);
+          });
+          requestValidatorModule = cachingValidatorModule;
+        }
         RequestValidatingInterceptor interceptor = new RequestValidatingInterceptor();
         interceptor.setFailOnSeverity(ResultSeverityEnum.ERROR);
-        interceptor.setValidatorModules(Collections.singletonList(validatorModule));
+        interceptor.setValidatorModules(Collections.singletonList(requestValidatorModule));
         registerInterceptor(interceptor);
       }
       if (appProperties.getValidation().getResponses_enabled()) {
-        ResponseValidatingInterceptor interceptor = new ResponseValidatingInterceptor();
-        interceptor.setFailOnSeverity(ResultSeverityEnum.ERROR);
-        interceptor.setValidatorModules(Collections.singletonList(validatorModule));
-        registerInterceptor(interceptor);
+        if (appProperties.getValidation().getResponses_async()) {
+          AppProperties.Validation validation = appProperties.getValidation();
+          SamplingResponseValidatingInterceptor interceptor = new SamplingResponseValidatingInterceptor(ctx, validatorModule, validation.getResponses_sample_rate(), validation.getResponses_threads(), validation.getResponses_queue_capacity());
+          meterRegistry.ifPresent(registry -> {
+            FunctionCounter.builder("fhir.validation.response.validated", interceptor, SamplingResponseValidatingInterceptor::getValidatedCount).register(registry);
+            FunctionCounter.builder("fhir.validation.response.dropped", interceptor, SamplingResponseValidatingInterceptor::getDroppedCount).register(registry);
+            FunctionCounter.builder("fhir.validation.response.errors", interceptor, SamplingResponseValidatingInterceptor::getErrorCount).register(registry);
+            FunctionCounter.builder("fhir.validation.response.warnings", interceptor, SamplingResponseValidatingInterceptor::getWarningCount).register(registry);
+            FunctionCounter.builder("fhir.validation.response.failures", interceptor, SamplingResponseValidatingInterceptor::getFailureCount).register(registry);
+          });
+          registerInterceptor(interceptor);
+          myShutdownTasks.add(interceptor::shutdown);
+        } else {
+          ResponseValidatingInterceptor interceptor = new ResponseValidatingInterceptor();
+          interceptor.setFailOnSeverity(ResultSeverityEnum.ERROR);
+          interceptor.setValidatorModules(Collections.singletonList(validatorModule));
+          registerInterceptor(interceptor);
+        }
       }
     }
 
@@ -352,6 +570,12 @@ public class BaseJpaRestfulServer extends RestfulServer {
       registerProvider(bulkDataExportProvider);
     }
 
+    // Bulk Import
+    if (appProperties.getBulk_import_enabled()) {
+      registerProvider(new BulkImportProvider(ctx, bulkImportSvc));
+      myShutdownTasks.add(bulkImportSvc::shutdown);
+    }
+
     // valueSet Operations i.e $expand
     registerProvider(valueSetOperationProvider);
 
@@ -367,25 +591,31 @@ public class BaseJpaRestfulServer extends RestfulServer {
       daoConfig.setResourceClientIdStrategy(appProperties.getClient_id_strategy());
     }
 
-    if (appProperties.getImplementationGuides() != null) {
-      Map<String, AppProperties.ImplementationGuide> guides = appProperties.getImplementationGuides();
-      for (Map.Entry<String, AppProperties.ImplementationGuide> guide : guides.entrySet()) {
-			PackageInstallationSpec packageInstallationSpec = new PackageInstallationSpec()
-				.setPackageUrl(guide.getValue().getUrl())
-				.setName(guide.getValue().getName())
-				.setVersion(guide.getValue().getVersion())
-				.setInstallMode(PackageInstallationSpec.InstallModeEnum.STORE_AND_INSTALL);
-			if(appProperties.getInstall_transitive_ig_dependencies()) {
-				packageInstallationSpec.setFetchDependencies(true);
-				packageInstallationSpec.setDependencyExcludes(ImmutableList.of("hl7.fhir.r2.core", "hl7.fhir.r3.core", "hl7.fhir.r4.core", "hl7.fhir.r5.core"));
-			}
-			packageInstallerSvc.install(packageInstallationSpec);
+    /*
+     * Installing the implementation guides and building the repository validation rules from them can
+     * optionally run in the background, in which case writes are rejected until it has completed. The
+     * $readiness operation reports when the server is ready.
+     */
+    ReadinessInterceptor readinessInterceptor = new ReadinessInterceptor(appProperties.getIg_install().getRetry_after_seconds());
+    registerInterceptor(readinessInterceptor);
+    registerProvider(new ReadinessProvider(ctx, readinessInterceptor));
+    readinessInterceptor.start(() -> {
+      if (appProperties.getImplementationGuides() != null) {
+        implementationGuideInstaller.install(appProperties.getImplementationGuides());
       }
-    }
 
-    if(factory != null) {
-		 interceptorService.registerInterceptor(factory.buildUsingStoredStructureDefinitions());
-	 }
+      if (validatorModule != null && appProperties.getValidation().getWarm_up_enabled()) {
+        new ValidationSupportWarmer(ctx, myValidationSupport, validatorModule).warmUp(appProperties.getValidation().getWarm_up_parallelism());
+      }
+
+      if (factory != null) {
+        if (appProperties.getReload_repository_validating_rules()) {
+          new RepositoryValidationRuleReloader(ctx, interceptorService, factory).start();
+        } else {
+          interceptorService.registerInterceptor(factory.buildUsingStoredStructureDefinitions());
+        }
+      }
+    }, appProperties.getIg_install().getAsync());
 
 
     if (appProperties.getLastn_enabled()) {
@@ -0,0 +1,69 @@
+package starter;
+
+import ca.uhn.fhir.interceptor.api.Hook;
+import ca.uhn.fhir.interceptor.api.Interceptor;
+import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.api.server.ResponseDetails;
+import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
+import ca.uhn.fhir.rest.server.interceptor.ResponseHighlighterInterceptor;
+import org.hl7.fhir.instance.model.api.IBaseConformance;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import static org.apache.commons.lang3.StringUtils.isNotBlank;
+
+/**
+ * Only lets the {@link ResponseHighlighterInterceptor} look at requests that may want an HTML response, i.e. requests
+ * asking for an HTML <code>_format</code>, or without a <code>_format</code> but accepting <code>text/html</code>
+ * and not sent by a script. All other requests (API clients asking for JSON or XML) skip the highlighter entirely.
+ */
+@Interceptor
+public class BrowserResponseHighlighterInterceptor {
+
+	// Same order as the wrapped interceptor, so that it still renders after the other interceptors
+	private static final int ORDER = 10000;
+
+	private final ResponseHighlighterInterceptor delegate;
+
+	public BrowserResponseHighlighterInterceptor(ResponseHighlighterInterceptor delegate) {
+		this.delegate = delegate;
+	}
+
+	@Hook(value = Pointcut.SERVER_OUTGOING_RESPONSE, order = ORDER)
+	public boolean outgoingResponse(RequestDetails theRequestDetails, ResponseDetails theResponseDetails, HttpServletRequest theServletRequest, HttpServletResponse theServletResponse) {
+		return !mayWantHtml(theRequestDetails) || delegate.outgoingResponse(theRequestDetails, theResponseDetails, theServletRequest, theServletResponse);
+	}
+
+	@Hook(value = Pointcut.SERVER_HANDLE_EXCEPTION, order = ORDER)
+	public boolean handleException(RequestDetails theRequestDetails, BaseServerResponseException theException, HttpServletRequest theServletRequest, HttpServletResponse theServletResponse) {
+		return !mayWantHtml(theRequestDetails) || delegate.handleException(theRequestDetails, theException, theServletRequest, theServletResponse);
+	}
+
+	@Hook(value = Pointcut.SERVER_OUTGOING_GRAPHQL_RESPONSE, order = ORDER)
+	public boolean outgoingGraphqlResponse(RequestDetails theRequestDetails, String theRequest, String theResponse, HttpServletRequest theServletRequest, HttpServletResponse theServletResponse) {
+		return !mayWantHtml(theRequestDetails) || delegate.outgoingGraphqlResponse(theRequestDetails, theRequest, theResponse, theServletRequest, theServletResponse);
+	}
+
+	/**
+	 * Advertises the HTML formats in the CapabilityStatement, whoever asks for it
+	 */
+	@Hook(Pointcut.SERVER_CAPABILITY_STATEMENT_GENERATED)
+	public void capabilityStatementGenerated(RequestDetails theRequestDetails, IBaseConformance theCapabilityStatement) {
+		delegate.capabilityStatementGenerated(theRequestDetails, theCapabilityStatement);
+	}
+
+	static boolean mayWantHtml(RequestDetails theRequestDetails) {
+		String[] format = theRequestDetails.getParameters().get(Constants.PARAM_FORMAT);
+		if (format != null && format.length > 0) {
+			return format[0] != null && format[0].contains("html");
+		}
+		if (isNotBlank(theRequestDetails.getHeader("X-Requested-With"))) {
+			return false;
+		}
+		String accept = theRequestDetails.getHeader(Constants.HEADER_ACCEPT);
+		return accept != null && accept.contains(Constants.CT_HTML);
+	}
+}
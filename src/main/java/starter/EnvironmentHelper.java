@@ -15,12 +15,14 @@ import org.hibernate.search.mapper.orm.automaticindexing.session.AutomaticIndexi
 import org.hibernate.search.mapper.orm.cfg.HibernateOrmMapperSettings;
 import org.hibernate.search.mapper.orm.schema.management.SchemaManagementStrategyName;
 import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.boot.context.properties.bind.Binder;
 import org.springframework.boot.orm.jpa.hibernate.SpringImplicitNamingStrategy;
 import org.springframework.boot.orm.jpa.hibernate.SpringPhysicalNamingStrategy;
 import org.springframework.core.env.CompositePropertySource;
 import org.springframework.core.env.ConfigurableEnvironment;
 import org.springframework.core.env.EnumerablePropertySource;
 import org.springframework.core.env.PropertySource;
+import starter.cache.SecondLevelCacheConfigurer;
 
 import java.util.Arrays;
 import java.util.HashMap;
@@ -45,10 +47,22 @@ public class EnvironmentHelper {
 		//TODO The bean factory should be added as parameter but that requires that it can be injected from the entityManagerFactory bean from xBaseConfig
 		//properties.putIfAbsent(AvailableSettings.BEAN_CONTAINER, new SpringBeanContainer(beanFactory));
 
+		//JDBC batch size and write-optimized persistence profile, applied before the HAPI defaults so that they take precedence over them
+		Integer jdbcBatchSize = getJdbcBatchSize(environment, isWriteOptimizedPersistence(environment) ? 100 : null);
+		if (jdbcBatchSize != null) {
+			properties.putIfAbsent(AvailableSettings.STATEMENT_BATCH_SIZE, jdbcBatchSize);
+		}
+
 		//hapi-fhir-jpaserver-base "sensible defaults"
 		Map<String, Object> hapiJpaPropertyMap = new HapiFhirLocalContainerEntityManagerFactoryBean(myConfigurableListableBeanFactory).getJpaPropertyMap();
 		hapiJpaPropertyMap.forEach(properties::putIfAbsent);
 
+		//Opt-in second-level cache for read-mostly entities, applied before the starter defaults that disable it
+		AppProperties.SecondLevelCache secondLevelCache = getSecondLevelCache(environment);
+		if (secondLevelCache.getEnabled()) {
+			SecondLevelCacheConfigurer.configure(secondLevelCache, properties);
+		}
+
 		//hapi-fhir-jpaserver-starter defaults
 		properties.putIfAbsent(AvailableSettings.FORMAT_SQL, false);
 		properties.putIfAbsent(AvailableSettings.SHOW_SQL, false);
@@ -113,6 +127,18 @@ public class EnvironmentHelper {
 		return obj;
 	}
 
+	public static AppProperties.SecondLevelCache getSecondLevelCache(ConfigurableEnvironment environment) {
+		return Binder.get(environment).bind("hapi.fhir.second_level_cache", AppProperties.SecondLevelCache.class).orElseGet(AppProperties.SecondLevelCache::new);
+	}
+
+	public static Boolean isWriteOptimizedPersistence(ConfigurableEnvironment environment) {
+		return environment.getProperty("hapi.fhir.write_optimized_persistence", Boolean.class, false);
+	}
+
+	public static Integer getJdbcBatchSize(ConfigurableEnvironment environment, Integer defaultBatchSize) {
+		return environment.getProperty("hapi.fhir.jdbc_batch_size", Integer.class, defaultBatchSize);
+	}
+
 	public static String getElasticsearchServerUrl(ConfigurableEnvironment environment) {
 		return environment.getProperty("elasticsearch.rest_url", String.class);
 	}
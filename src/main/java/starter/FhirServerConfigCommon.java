@@ -1,16 +1,21 @@
 package starter;
 
+import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.jpa.api.config.DaoConfig;
+import ca.uhn.fhir.jpa.api.dao.DaoRegistry;
 import ca.uhn.fhir.jpa.binstore.DatabaseBlobBinaryStorageSvcImpl;
 import ca.uhn.fhir.jpa.binstore.IBinaryStorageSvc;
 import ca.uhn.fhir.jpa.config.HibernatePropertiesProvider;
 import ca.uhn.fhir.jpa.model.config.PartitionSettings;
 import ca.uhn.fhir.jpa.model.config.PartitionSettings.CrossPartitionReferenceMode;
 import ca.uhn.fhir.jpa.model.entity.ModelConfig;
+import ca.uhn.fhir.jpa.packages.IHapiPackageCacheManager;
+import ca.uhn.fhir.jpa.packages.IPackageInstallerSvc;
 import ca.uhn.fhir.jpa.subscription.channel.subscription.SubscriptionDeliveryHandlerFactory;
 import ca.uhn.fhir.jpa.subscription.match.deliver.email.EmailSenderImpl;
 import ca.uhn.fhir.jpa.subscription.match.deliver.email.IEmailSender;
 import ca.uhn.fhir.rest.server.mail.MailConfig;
+import ca.uhn.fhir.validation.IValidatorModule;
 import com.google.common.base.Strings;
 import org.hl7.fhir.dstu2.model.Subscription;
 import org.springframework.boot.env.YamlPropertySourceLoader;
@@ -20,6 +25,8 @@ import org.springframework.context.annotation.Lazy;
 import org.springframework.context.annotation.Primary;
 import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
+import starter.bulk.BulkImportSvc;
+import starter.ig.ImplementationGuideInstaller;
 
 import java.util.Optional;
 
@@ -205,6 +212,16 @@ public class FhirServerConfigCommon {
     return binaryStorageSvc;
   }
 
+  @Bean
+  public BulkImportSvc bulkImportSvc(FhirContext fhirContext, DaoRegistry daoRegistry, IValidatorModule validatorModule, AppProperties appProperties) {
+    return new BulkImportSvc(fhirContext, daoRegistry, validatorModule, appProperties);
+  }
+
+  @Bean
+  public ImplementationGuideInstaller implementationGuideInstaller(AppProperties appProperties, IPackageInstallerSvc packageInstallerSvc, IHapiPackageCacheManager packageCacheManager) {
+    return new ImplementationGuideInstaller(appProperties, packageInstallerSvc, packageCacheManager);
+  }
+
   @Bean()
   public IEmailSender emailSender(AppProperties appProperties, Optional<SubscriptionDeliveryHandlerFactory> subscriptionDeliveryHandlerFactory) {
     if (appProperties.getSubscription() != null && appProperties.getSubscription().getEmail() != null) {
@@ -11,8 +11,11 @@ import org.springframework.context.annotation.*;
 import org.springframework.core.env.ConfigurableEnvironment;
 import org.springframework.orm.jpa.JpaTransactionManager;
 import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import starter.annotations.OnDSTU3Condition;
 import starter.cql.StarterCqlDstu3Config;
+import starter.search.HybridPagingProvider;
+import starter.search.SearchCoordinatorExecutor;
 
 import javax.annotation.PostConstruct;
 import javax.persistence.EntityManagerFactory;
@@ -48,9 +51,24 @@ public class FhirServerConfigDstu3 extends BaseJavaConfigDstu3 {
   }
 
 
+  /**
+   * Optionally replaces the static search coordinator pool with one that resizes itself and
+   * rejects searches when too many are waiting.
+   */
+  @Override
+  public ThreadPoolTaskExecutor searchCoordinatorThreadFactory() {
+    if (appProperties.getSearch_coordinator().getAdaptive_enabled()) {
+      return SearchCoordinatorExecutor.create(appProperties);
+    }
+    return super.searchCoordinatorThreadFactory();
+  }
+
   @Override
   public DatabaseBackedPagingProvider databaseBackedPagingProvider() {
-    DatabaseBackedPagingProvider pagingProvider = super.databaseBackedPagingProvider();
+    AppProperties.HybridPaging hybridPaging = appProperties.getHybrid_paging();
+    DatabaseBackedPagingProvider pagingProvider = hybridPaging.getEnabled()
+      ? new HybridPagingProvider(hybridPaging.getIn_memory_threshold(), hybridPaging.getMax_in_memory_searches(), hybridPaging.getRetain_in_memory_mins())
+      : super.databaseBackedPagingProvider();
     pagingProvider.setDefaultPageSize(appProperties.getDefault_page_size());
     pagingProvider.setMaximumPageSize(appProperties.getMax_page_size());
     return pagingProvider;
@@ -1,9 +1,24 @@
 package starter;
 
+import ca.uhn.fhir.jpa.interceptor.validation.IRepositoryValidatingRule;
 import ca.uhn.fhir.jpa.interceptor.validation.RepositoryValidatingInterceptor;
 
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 public interface IRepositoryValidationInterceptorFactory {
 	RepositoryValidatingInterceptor buildUsingStoredStructureDefinitions();
 
 	RepositoryValidatingInterceptor build();
+
+	/**
+	 * @return The urls of the stored resource profiles, grouped by the resource type they constrain
+	 */
+	Map<String, Set<String>> loadStoredProfileUrlsByType();
+
+	/**
+	 * Builds the rules requiring resources of the given type to conform to at least one of the given profiles
+	 */
+	List<IRepositoryValidatingRule> buildRules(String resourceType, Set<String> profileUrls);
 }
@@ -9,15 +9,20 @@ import ca.uhn.fhir.jpa.interceptor.validation.RepositoryValidatingRuleBuilder;
 import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
 import ca.uhn.fhir.rest.api.server.IBundleProvider;
 import ca.uhn.fhir.rest.param.TokenParam;
+import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.r5.model.StructureDefinition;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Conditional;
 import org.springframework.context.annotation.Configuration;
 import starter.annotations.OnR5Condition;
 
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.TreeMap;
 
 /**
  * This class can be customized to enable the {@link RepositoryValidatingInterceptor}
@@ -31,12 +36,16 @@ import java.util.stream.Collectors;
 @Conditional(OnR5Condition.class)
 public class RepositoryValidationInterceptorFactoryR5 implements IRepositoryValidationInterceptorFactory {
 
+	private static final int PAGE_SIZE = 100;
+
 	private final FhirContext fhirContext;
 	private final RepositoryValidatingRuleBuilder repositoryValidatingRuleBuilder;
+	private final ObjectProvider<RepositoryValidatingRuleBuilder> repositoryValidatingRuleBuilderProvider;
 	private final IFhirResourceDao structureDefinitionResourceProvider;
 
-	public RepositoryValidationInterceptorFactoryR5(RepositoryValidatingRuleBuilder repositoryValidatingRuleBuilder, DaoRegistry daoRegistry) {
+	public RepositoryValidationInterceptorFactoryR5(RepositoryValidatingRuleBuilder repositoryValidatingRuleBuilder, ObjectProvider<RepositoryValidatingRuleBuilder> repositoryValidatingRuleBuilderProvider, DaoRegistry daoRegistry) {
 		this.repositoryValidatingRuleBuilder = repositoryValidatingRuleBuilder;
+		this.repositoryValidatingRuleBuilderProvider = repositoryValidatingRuleBuilderProvider;
 		this.fhirContext = daoRegistry.getSystemDao().getContext();
 		structureDefinitionResourceProvider = daoRegistry.getResourceDao("StructureDefinition");
 
@@ -44,20 +53,41 @@ public class RepositoryValidationInterceptorFactoryR5 implements IRepositoryVali
 
 	public RepositoryValidatingInterceptor buildUsingStoredStructureDefinitions() {
 
+		List<IRepositoryValidatingRule> rules = new ArrayList<>();
+		loadStoredProfileUrlsByType().forEach((type, urls) -> rules.addAll(buildRules(type, urls)));
+		return new RepositoryValidatingInterceptor(fhirContext, rules);
+	}
+
+	@Override
+	public Map<String, Set<String>> loadStoredProfileUrlsByType() {
+
 		IBundleProvider results = structureDefinitionResourceProvider.search(new SearchParameterMap().add(StructureDefinition.SP_KIND, new TokenParam("resource")));
-		Map<String, List<StructureDefinition>> structureDefintions = results.getResources(0, results.size())
-			.stream()
-			.map(StructureDefinition.class::cast)
-			.collect(Collectors.groupingBy(StructureDefinition::getType));
 
-		structureDefintions.entrySet().forEach(structureDefinitionListEntry ->
-		{
-			String[] urls = structureDefinitionListEntry.getValue().stream().map(StructureDefinition::getUrl).toArray(String[]::new);
-			repositoryValidatingRuleBuilder.forResourcesOfType(structureDefinitionListEntry.getKey()).requireAtLeastOneProfileOf(urls).and().requireValidationToDeclaredProfiles();
-		});
+		// Page through the results and only keep the type and url of each StructureDefinition, so that memory
+		// usage does not grow with the number of stored profiles
+		Map<String, Set<String>> profileUrlsByType = new TreeMap<>();
+		int from = 0;
+		while (true) {
+			List<IBaseResource> page = results.getResources(from, from + PAGE_SIZE);
+			if (page.isEmpty()) {
+				break;
+			}
+			for (IBaseResource resource : page) {
+				StructureDefinition structureDefinition = (StructureDefinition) resource;
+				profileUrlsByType.computeIfAbsent(structureDefinition.getType(), t -> new LinkedHashSet<>()).add(structureDefinition.getUrl());
+			}
+			from += page.size();
+		}
+		return profileUrlsByType;
+	}
 
-		List<IRepositoryValidatingRule> rules = repositoryValidatingRuleBuilder.build();
-		return new RepositoryValidatingInterceptor(fhirContext, rules);
+	@Override
+	public List<IRepositoryValidatingRule> buildRules(String resourceType, Set<String> profileUrls) {
+
+		// The rule builder accumulates rules, so every rule set is built with a new one
+		RepositoryValidatingRuleBuilder ruleBuilder = repositoryValidatingRuleBuilderProvider.getObject();
+		ruleBuilder.forResourcesOfType(resourceType).requireAtLeastOneProfileOf(profileUrls.toArray(new String[0])).and().requireValidationToDeclaredProfiles();
+		return ruleBuilder.build();
 	}
 
 	public RepositoryValidatingInterceptor build() {
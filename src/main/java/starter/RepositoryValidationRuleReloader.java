@@ -0,0 +1,176 @@
+package starter;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.interceptor.api.Hook;
+import ca.uhn.fhir.interceptor.api.IInterceptorService;
+import ca.uhn.fhir.interceptor.api.Interceptor;
+import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.jpa.interceptor.validation.IRepositoryValidatingRule;
+import ca.uhn.fhir.jpa.interceptor.validation.RepositoryValidatingInterceptor;
+import ca.uhn.fhir.util.FhirTerser;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Keeps the {@link RepositoryValidatingInterceptor} in sync with the stored StructureDefinitions.
+ * <p>
+ * The rules are built once from the stored profiles. After that, every committed create, update or delete of a
+ * resource profile only rebuilds the rules of the resource type(s) that profile constrains. The updated rule set is
+ * built next to the current one (copy-on-write) and swapped in by registering the new interceptor before
+ * unregistering the old one, so writes are never processed without validation rules.
+ */
+@Interceptor
+public class RepositoryValidationRuleReloader {
+
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(RepositoryValidationRuleReloader.class);
+
+	private final FhirContext fhirContext;
+	private final IInterceptorService interceptorService;
+	private final IRepositoryValidationInterceptorFactory factory;
+
+	private Map<String, Set<String>> profileUrlsByType = Collections.emptyMap();
+	private Map<String, List<IRepositoryValidatingRule>> rulesByType = Collections.emptyMap();
+	private RepositoryValidatingInterceptor currentInterceptor;
+
+	public RepositoryValidationRuleReloader(FhirContext fhirContext, IInterceptorService interceptorService, IRepositoryValidationInterceptorFactory factory) {
+		this.fhirContext = fhirContext;
+		this.interceptorService = interceptorService;
+		this.factory = factory;
+	}
+
+	/**
+	 * Builds the rules from the stored profiles and registers both the validating interceptor and this reloader
+	 */
+	public synchronized void start() {
+		Map<String, Set<String>> storedProfileUrlsByType = factory.loadStoredProfileUrlsByType();
+		Map<String, List<IRepositoryValidatingRule>> newRulesByType = new TreeMap<>();
+		storedProfileUrlsByType.forEach((type, urls) -> newRulesByType.put(type, factory.buildRules(type, urls)));
+		swap(storedProfileUrlsByType, newRulesByType);
+		interceptorService.registerInterceptor(this);
+	}
+
+	@Hook(Pointcut.STORAGE_PRECOMMIT_RESOURCE_CREATED)
+	public void resourceCreated(IBaseResource theResource) {
+		if (isResourceProfile(theResource)) {
+			afterCommit(() -> update(null, theResource));
+		}
+	}
+
+	@Hook(Pointcut.STORAGE_PRECOMMIT_RESOURCE_UPDATED)
+	public void resourceUpdated(IBaseResource theOldResource, IBaseResource theNewResource) {
+		boolean oldIsProfile = isResourceProfile(theOldResource);
+		boolean newIsProfile = isResourceProfile(theNewResource);
+		if (oldIsProfile || newIsProfile) {
+			afterCommit(() -> update(oldIsProfile ? theOldResource : null, newIsProfile ? theNewResource : null));
+		}
+	}
+
+	@Hook(Pointcut.STORAGE_PRECOMMIT_RESOURCE_DELETED)
+	public void resourceDeleted(IBaseResource theResource) {
+		if (isResourceProfile(theResource)) {
+			afterCommit(() -> update(theResource, null));
+		}
+	}
+
+	private synchronized void update(IBaseResource theRemovedProfile, IBaseResource theAddedProfile) {
+		Map<String, Set<String>> newProfileUrlsByType = new TreeMap<>();
+		profileUrlsByType.forEach((type, urls) -> newProfileUrlsByType.put(type, new LinkedHashSet<>(urls)));
+
+		Set<String> changedTypes = new LinkedHashSet<>();
+		if (theRemovedProfile != null) {
+			String type = getType(theRemovedProfile);
+			String url = getUrl(theRemovedProfile);
+			Set<String> urls = newProfileUrlsByType.get(type);
+			boolean replacedBySameProfile = theAddedProfile != null && type != null && type.equals(getType(theAddedProfile)) && url != null && url.equals(getUrl(theAddedProfile));
+			if (urls != null && urls.contains(url) && !replacedBySameProfile) {
+				// Other stored profiles (e.g. another version of the same guide) may have the same url, so the urls of the
+				// type are loaded again rather than removing this one
+				Set<String> storedUrls = factory.loadStoredProfileUrlsByType().get(type);
+				if (!urls.equals(storedUrls)) {
+					changedTypes.add(type);
+					if (storedUrls == null) {
+						newProfileUrlsByType.remove(type);
+					} else {
+						newProfileUrlsByType.put(type, new LinkedHashSet<>(storedUrls));
+					}
+				}
+			}
+		}
+		if (theAddedProfile != null) {
+			String type = getType(theAddedProfile);
+			if (newProfileUrlsByType.computeIfAbsent(type, t -> new LinkedHashSet<>()).add(getUrl(theAddedProfile))) {
+				changedTypes.add(type);
+			}
+		}
+		if (changedTypes.isEmpty()) {
+			return;
+		}
+
+		Map<String, List<IRepositoryValidatingRule>> newRulesByType = new TreeMap<>(rulesByType);
+		for (String type : changedTypes) {
+			Set<String> urls = newProfileUrlsByType.get(type);
+			if (urls == null) {
+				newRulesByType.remove(type);
+			} else {
+				newRulesByType.put(type, factory.buildRules(type, urls));
+			}
+		}
+		swap(newProfileUrlsByType, newRulesByType);
+		ourLog.info("Rebuilt repository validation rules for resource type(s) {}", changedTypes);
+	}
+
+	private void swap(Map<String, Set<String>> newProfileUrlsByType, Map<String, List<IRepositoryValidatingRule>> newRulesByType) {
+		List<IRepositoryValidatingRule> rules = new ArrayList<>();
+		newRulesByType.values().forEach(rules::addAll);
+		RepositoryValidatingInterceptor newInterceptor = new RepositoryValidatingInterceptor(fhirContext, rules);
+
+		interceptorService.registerInterceptor(newInterceptor);
+		if (currentInterceptor != null) {
+			interceptorService.unregisterInterceptor(currentInterceptor);
+		}
+		currentInterceptor = newInterceptor;
+		profileUrlsByType = newProfileUrlsByType;
+		rulesByType = newRulesByType;
+	}
+
+	private boolean isResourceProfile(IBaseResource theResource) {
+		return theResource != null
+			&& "StructureDefinition".equals(fhirContext.getResourceType(theResource))
+			&& "resource".equals(fhirContext.newTerser().getSinglePrimitiveValueOrNull(theResource, "kind"));
+	}
+
+	private String getType(IBaseResource theStructureDefinition) {
+		FhirTerser terser = fhirContext.newTerser();
+		return terser.getSinglePrimitiveValueOrNull(theStructureDefinition, "type");
+	}
+
+	private String getUrl(IBaseResource theStructureDefinition) {
+		FhirTerser terser = fhirContext.newTerser();
+		return terser.getSinglePrimitiveValueOrNull(theStructureDefinition, "url");
+	}
+
+	/**
+	 * Defers the given task until the current transaction has committed, so rolled back writes never change the rules
+	 */
+	private static void afterCommit(Runnable theTask) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			theTask.run();
+			return;
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+			@Override
+			public void afterCommit() {
+				theTask.run();
+			}
+		});
+	}
+}
@@ -0,0 +1,119 @@
+package starter.bulk;
+
+import ca.uhn.fhir.util.StopWatch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress of a single <code>$import</code> job. Counters are updated by the import workers and read by
+ * <code>$import-poll-status</code>.
+ */
+public class BulkImportJob {
+
+	public enum Status {
+		SUBMITTED, IN_PROGRESS, COMPLETE, FAILED
+	}
+
+	private final String id;
+	private final int maxErrors;
+	private final StopWatch stopWatch = new StopWatch();
+	private final AtomicLong parsed = new AtomicLong();
+	private final AtomicLong written = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private final List<String> errors = new ArrayList<>();
+	private volatile Status status = Status.SUBMITTED;
+	private volatile long finishedMillis;
+	private volatile long elapsedMillis = -1;
+	private volatile int files;
+	private volatile int filesCompleted;
+
+	BulkImportJob(String id, int maxErrors) {
+		this.id = id;
+		this.maxErrors = maxErrors;
+	}
+
+	void addError(String error) {
+		failed.incrementAndGet();
+		synchronized (errors) {
+			if (errors.size() < maxErrors) {
+				errors.add(error);
+			}
+		}
+	}
+
+	void addParsed(int count) {
+		parsed.addAndGet(count);
+	}
+
+	void addWritten(int count) {
+		written.addAndGet(count);
+	}
+
+	void setStatus(Status status) {
+		if (status == Status.COMPLETE || status == Status.FAILED) {
+			elapsedMillis = stopWatch.getMillis();
+			finishedMillis = System.currentTimeMillis();
+		}
+		this.status = status;
+	}
+
+	/**
+	 * @return <code>true</code> if the job finished before the given time
+	 */
+	boolean isFinishedBefore(long theMillis) {
+		return finishedMillis != 0 && finishedMillis < theMillis;
+	}
+
+	void setFiles(int files) {
+		this.files = files;
+	}
+
+	void fileCompleted() {
+		filesCompleted++;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	public int getFiles() {
+		return files;
+	}
+
+	public int getFilesCompleted() {
+		return filesCompleted;
+	}
+
+	public long getParsed() {
+		return parsed.get();
+	}
+
+	public long getWritten() {
+		return written.get();
+	}
+
+	public long getFailed() {
+		return failed.get();
+	}
+
+	public List<String> getErrors() {
+		synchronized (errors) {
+			return Collections.unmodifiableList(new ArrayList<>(errors));
+		}
+	}
+
+	/**
+	 * @return The time the job has been running, or took if it has finished
+	 */
+	public long getElapsedMillis() {
+		long retVal = elapsedMillis;
+		return retVal != -1 ? retVal : stopWatch.getMillis();
+	}
+}
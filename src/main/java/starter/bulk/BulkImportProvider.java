@@ -0,0 +1,87 @@
+package starter.bulk;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.annotation.Operation;
+import ca.uhn.fhir.rest.annotation.OperationParam;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
+import ca.uhn.fhir.rest.server.servlet.ServletRequestDetails;
+import ca.uhn.fhir.util.ParametersUtil;
+import org.hl7.fhir.instance.model.api.IBaseBinary;
+import org.hl7.fhir.instance.model.api.IBaseParameters;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.instance.model.api.IPrimitiveType;
+
+import javax.servlet.http.HttpServletResponse;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Provides the <code>$import</code> operation, which loads NDJSON files in the background, and the
+ * <code>$import-poll-status</code> operation, which reports the progress of an import.
+ * <p>
+ * The NDJSON is either read from <code>inputSource</code>, a file or directory relative to
+ * <code>hapi.fhir.bulk_import.directory</code>, or passed in as one or more <code>upload</code> Binary resources.
+ * The kick-off request returns <code>202 Accepted</code> with the status URL in the <code>Content-Location</code>
+ * header, like <code>$export</code>.
+ */
+public class BulkImportProvider {
+
+	private final FhirContext fhirContext;
+	private final BulkImportSvc bulkImportSvc;
+
+	public BulkImportProvider(FhirContext fhirContext, BulkImportSvc bulkImportSvc) {
+		this.fhirContext = fhirContext;
+		this.bulkImportSvc = bulkImportSvc;
+	}
+
+	@Operation(name = "$import", manualResponse = true)
+	public void importNdjson(
+		@OperationParam(name = "inputSource", min = 0, max = 1, typeName = "string") IPrimitiveType<String> theInputSource,
+		@OperationParam(name = "upload", min = 0, max = OperationParam.MAX_UNLIMITED) List<IBaseResource> theUploads,
+		ServletRequestDetails theRequestDetails) {
+
+		BulkImportJob job;
+		if (theInputSource != null && theInputSource.getValue() != null) {
+			job = bulkImportSvc.submitPath(theInputSource.getValue());
+		} else if (theUploads != null && !theUploads.isEmpty()) {
+			List<byte[]> uploads = new ArrayList<>();
+			for (IBaseResource upload : theUploads) {
+				if (!(upload instanceof IBaseBinary)) {
+					throw new InvalidRequestException("Parameter upload must be a Binary resource");
+				}
+				uploads.add(((IBaseBinary) upload).getContent());
+			}
+			job = bulkImportSvc.submitUploads(uploads);
+		} else {
+			throw new InvalidRequestException("Either inputSource or upload must be provided");
+		}
+
+		HttpServletResponse response = theRequestDetails.getServletResponse();
+		response.setStatus(Constants.STATUS_HTTP_202_ACCEPTED);
+		response.addHeader(Constants.HEADER_CONTENT_LOCATION, theRequestDetails.getServerBaseForRequest() + "/$import-poll-status?_jobId=" + job.getId());
+	}
+
+	@Operation(name = "$import-poll-status", idempotent = true)
+	public IBaseParameters pollStatus(@OperationParam(name = "_jobId", typeName = "string") IPrimitiveType<String> theJobId) {
+		BulkImportJob job = theJobId != null ? bulkImportSvc.getJob(theJobId.getValue()) : null;
+		if (job == null) {
+			throw new ResourceNotFoundException("Unknown import job: " + (theJobId != null ? theJobId.getValue() : null));
+		}
+
+		IBaseParameters retVal = ParametersUtil.newInstance(fhirContext);
+		ParametersUtil.addParameterToParametersString(fhirContext, retVal, "jobId", job.getId());
+		ParametersUtil.addParameterToParametersCode(fhirContext, retVal, "status", job.getStatus().name().toLowerCase());
+		ParametersUtil.addParameterToParametersInteger(fhirContext, retVal, "files", job.getFiles());
+		ParametersUtil.addParameterToParametersInteger(fhirContext, retVal, "filesCompleted", job.getFilesCompleted());
+		ParametersUtil.addParameterToParametersInteger(fhirContext, retVal, "parsed", (int) job.getParsed());
+		ParametersUtil.addParameterToParametersInteger(fhirContext, retVal, "written", (int) job.getWritten());
+		ParametersUtil.addParameterToParametersInteger(fhirContext, retVal, "failed", (int) job.getFailed());
+		ParametersUtil.addParameterToParametersInteger(fhirContext, retVal, "elapsedMillis", (int) job.getElapsedMillis());
+		for (String error : job.getErrors()) {
+			ParametersUtil.addParameterToParametersString(fhirContext, retVal, "error", error);
+		}
+		return retVal;
+	}
+}
@@ -0,0 +1,346 @@
+package starter.bulk;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.jpa.api.dao.DaoRegistry;
+import ca.uhn.fhir.jpa.api.dao.IFhirResourceDao;
+import ca.uhn.fhir.jpa.api.dao.IFhirSystemDao;
+import ca.uhn.fhir.jpa.partition.SystemRequestDetails;
+import ca.uhn.fhir.parser.IParser;
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import ca.uhn.fhir.util.BundleBuilder;
+import ca.uhn.fhir.validation.FhirValidator;
+import ca.uhn.fhir.validation.IValidatorModule;
+import ca.uhn.fhir.validation.ResultSeverityEnum;
+import ca.uhn.fhir.validation.SingleValidationMessage;
+import ca.uhn.fhir.validation.ValidationResult;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.hl7.fhir.instance.model.api.IBaseBundle;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import starter.AppProperties;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs <code>$import</code> jobs: NDJSON files are read line by line and split into batches, which are parsed,
+ * optionally validated and written as one transaction each by a pool of workers.
+ * <p>
+ * Files are imported one at a time, Patient files first, so that references to resources in earlier files resolve. If
+ * the transaction for a batch fails, the resources of that batch are written one by one so that a single bad resource
+ * only fails itself. Only files below the configured import directory can be imported; uploads are spooled there.
+ * Finished jobs are forgotten after the configured retention period. Jobs still running or waiting when the service is
+ * shut down are stopped and marked as failed.
+ */
+public class BulkImportSvc {
+
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(BulkImportSvc.class);
+
+	private final FhirContext fhirContext;
+	private final DaoRegistry daoRegistry;
+	private final FhirValidator validator;
+	private final AppProperties.BulkImport config;
+	private final Map<String, BulkImportJob> jobs = new ConcurrentHashMap<>();
+	private final ExecutorService jobExecutor;
+	private volatile boolean shuttingDown;
+
+	public BulkImportSvc(FhirContext fhirContext, DaoRegistry daoRegistry, IValidatorModule validatorModule, AppProperties appProperties) {
+		this.fhirContext = fhirContext;
+		this.daoRegistry = daoRegistry;
+		this.config = appProperties.getBulk_import();
+		if (config.getValidate() && validatorModule != null) {
+			this.validator = fhirContext.newValidator();
+			this.validator.registerValidatorModule(validatorModule);
+		} else {
+			this.validator = null;
+		}
+		this.jobExecutor = Executors.newSingleThreadExecutor(new BasicThreadFactory.Builder().namingPattern("bulk-import-%d").daemon(true).build());
+	}
+
+	/**
+	 * @param path A file or directory, relative to the configured import directory
+	 */
+	public BulkImportJob submitPath(String path) {
+		File root = importDirectory();
+		File source = new File(root, path);
+		try {
+			String rootPath = root.getCanonicalPath();
+			String sourcePath = source.getCanonicalPath();
+			if (!sourcePath.equals(rootPath) && !sourcePath.startsWith(rootPath + File.separator)) {
+				throw new InvalidRequestException("Import path " + path + " is outside of the import directory");
+			}
+		} catch (IOException e) {
+			throw new InvalidRequestException("Invalid import path " + path);
+		}
+
+		List<File> files = new ArrayList<>();
+		if (source.isDirectory()) {
+			File[] children = source.listFiles((dir, name) -> name.endsWith(".ndjson"));
+			if (children != null) {
+				files.addAll(Arrays.asList(children));
+			}
+		} else if (source.isFile()) {
+			files.add(source);
+		}
+		if (files.isEmpty()) {
+			throw new InvalidRequestException("No NDJSON files found at import path " + path);
+		}
+		return submit(newJob(), files, false);
+	}
+
+	public BulkImportJob submitUploads(List<byte[]> uploads) {
+		BulkImportJob job = newJob();
+		File directory = new File(importDirectory(), ".uploads/" + job.getId());
+		if (!directory.mkdirs()) {
+			throw new InternalErrorException("Could not create upload directory " + directory);
+		}
+		List<File> files = new ArrayList<>();
+		try {
+			for (int i = 0; i < uploads.size(); i++) {
+				File file = new File(directory, "upload-" + i + ".ndjson");
+				try (OutputStream outputStream = new FileOutputStream(file)) {
+					outputStream.write(uploads.get(i));
+				}
+				files.add(file);
+			}
+		} catch (IOException e) {
+			throw new InvalidRequestException("Could not store uploaded NDJSON: " + e.getMessage());
+		}
+		return submit(job, files, true);
+	}
+
+	/**
+	 * Stops the running job, waiting for the transactions already started to finish, and fails the jobs not completed
+	 */
+	public void shutdown() {
+		shuttingDown = true;
+		jobExecutor.shutdownNow();
+		try {
+			if (!jobExecutor.awaitTermination(30, TimeUnit.SECONDS)) {
+				ourLog.warn("Bulk import did not stop within 30 seconds");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		for (BulkImportJob job : jobs.values()) {
+			if (job.getStatus() == BulkImportJob.Status.SUBMITTED || job.getStatus() == BulkImportJob.Status.IN_PROGRESS) {
+				job.addError("The server shut down before the import completed");
+				job.setStatus(BulkImportJob.Status.FAILED);
+			}
+		}
+	}
+
+	public BulkImportJob getJob(String id) {
+		expireJobs();
+		return jobs.get(id);
+	}
+
+	private BulkImportJob newJob() {
+		expireJobs();
+		BulkImportJob retVal = new BulkImportJob(UUID.randomUUID().toString(), config.getMax_errors());
+		jobs.put(retVal.getId(), retVal);
+		return retVal;
+	}
+
+	private void expireJobs() {
+		long finishedBefore = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(config.getRetain_jobs_mins());
+		jobs.values().removeIf(job -> job.isFinishedBefore(finishedBefore));
+	}
+
+	private BulkImportJob submit(BulkImportJob job, List<File> files, boolean deleteAfterImport) {
+		// Patients first, so that the references of the resources in the other files resolve
+		files.sort(Comparator.comparing((File f) -> !f.getName().startsWith("Patient")).thenComparing(File::getName));
+		job.setFiles(files.size());
+		jobExecutor.submit(() -> run(job, files, deleteAfterImport));
+		return job;
+	}
+
+	private void run(BulkImportJob job, List<File> files, boolean deleteAfterImport) {
+		job.setStatus(BulkImportJob.Status.IN_PROGRESS);
+		int parallelism = Math.max(1, config.getParallelism());
+		ExecutorService workers = Executors.newFixedThreadPool(parallelism, new BasicThreadFactory.Builder().namingPattern("bulk-import-worker-%d").daemon(true).build());
+		// Bounds the number of batches held in memory
+		Semaphore inFlight = new Semaphore(parallelism * 2);
+		try {
+			for (File file : files) {
+				List<Future<?>> futures = new ArrayList<>();
+				try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+					List<String> batch = new ArrayList<>(config.getBatch_size());
+					String line;
+					while ((line = reader.readLine()) != null) {
+						if (line.trim().isEmpty()) {
+							continue;
+						}
+						batch.add(line);
+						if (batch.size() >= config.getBatch_size()) {
+							futures.add(submitBatch(workers, inFlight, job, batch));
+							batch = new ArrayList<>(config.getBatch_size());
+						}
+					}
+					if (!batch.isEmpty()) {
+						futures.add(submitBatch(workers, inFlight, job, batch));
+					}
+				}
+				for (Future<?> future : futures) {
+					future.get();
+				}
+				job.fileCompleted();
+				ourLog.info("Bulk import {} completed file {} ({} written, {} failed so far)", job.getId(), file.getName(), job.getWritten(), job.getFailed());
+			}
+			job.setStatus(BulkImportJob.Status.COMPLETE);
+			ourLog.info("Bulk import {} completed in {}ms: {} parsed, {} written, {} failed", job.getId(), job.getElapsedMillis(), job.getParsed(), job.getWritten(), job.getFailed());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			job.addError("Interrupted");
+			job.setStatus(BulkImportJob.Status.FAILED);
+		} catch (IOException | ExecutionException e) {
+			ourLog.error("Bulk import {} failed", job.getId(), e);
+			job.addError(e.getMessage());
+			job.setStatus(BulkImportJob.Status.FAILED);
+		} finally {
+			workers.shutdownNow();
+			awaitWorkers(workers);
+			if (deleteAfterImport) {
+				for (File file : files) {
+					file.delete();
+				}
+				files.get(0).getParentFile().delete();
+			}
+		}
+	}
+
+	/**
+	 * Waits for the batches being written, also when the job was interrupted, so that none is still writing once the job
+	 * has stopped
+	 */
+	private static void awaitWorkers(ExecutorService workers) {
+		boolean interrupted = Thread.interrupted();
+		try {
+			workers.awaitTermination(30, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			interrupted = true;
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private Future<?> submitBatch(ExecutorService workers, Semaphore inFlight, BulkImportJob job, List<String> lines) throws InterruptedException {
+		inFlight.acquire();
+		return workers.submit(() -> {
+			try {
+				importBatch(job, lines);
+			} finally {
+				inFlight.release();
+			}
+		});
+	}
+
+	private void importBatch(BulkImportJob job, List<String> lines) {
+		if (shuttingDown) {
+			return;
+		}
+		IParser parser = fhirContext.newJsonParser();
+		List<IBaseResource> resources = new ArrayList<>(lines.size());
+		List<String> resourceLines = new ArrayList<>(lines.size());
+		for (String line : lines) {
+			IBaseResource resource;
+			try {
+				resource = parser.parseResource(line);
+			} catch (Exception e) {
+				job.addError("Could not parse resource: " + e.getMessage());
+				continue;
+			}
+			if (validator != null) {
+				ValidationResult result = validator.validateWithResult(resource);
+				if (!result.isSuccessful()) {
+					job.addError(resource.getIdElement().getValue() + " failed validation: " + firstMessage(result));
+					continue;
+				}
+			}
+			resources.add(resource);
+			resourceLines.add(line);
+		}
+		job.addParsed(resources.size());
+		if (resources.isEmpty()) {
+			return;
+		}
+
+		BundleBuilder bundleBuilder = new BundleBuilder(fhirContext);
+		bundleBuilder.setType("transaction");
+		for (IBaseResource resource : resources) {
+			if (resource.getIdElement().hasIdPart()) {
+				bundleBuilder.addTransactionUpdateEntry(resource);
+			} else {
+				bundleBuilder.addTransactionCreateEntry(resource);
+			}
+		}
+
+		try {
+			IFhirSystemDao<IBaseBundle, ?> systemDao = daoRegistry.getSystemDao();
+			systemDao.transaction(new SystemRequestDetails(), bundleBuilder.getBundle());
+			job.addWritten(resources.size());
+		} catch (Exception e) {
+			ourLog.debug("Bulk import {} batch transaction failed, writing resources one by one", job.getId(), e);
+			// Parsed again, as the failed transaction has assigned ids to the resources it created
+			for (String line : resourceLines) {
+				if (shuttingDown) {
+					return;
+				}
+				importResource(job, parser.parseResource(line));
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void importResource(BulkImportJob job, IBaseResource resource) {
+		try {
+			IFhirResourceDao<IBaseResource> dao = daoRegistry.getResourceDao(fhirContext.getResourceType(resource));
+			if (resource.getIdElement().hasIdPart()) {
+				dao.update(resource, new SystemRequestDetails());
+			} else {
+				dao.create(resource, new SystemRequestDetails());
+			}
+			job.addWritten(1);
+		} catch (Exception e) {
+			job.addError(resource.getIdElement().getValue() + ": " + e.getMessage());
+		}
+	}
+
+	private static String firstMessage(ValidationResult result) {
+		for (SingleValidationMessage message : result.getMessages()) {
+			if (message.getSeverity() != null && message.getSeverity().ordinal() >= ResultSeverityEnum.ERROR.ordinal()) {
+				return message.getLocationString() + " - " + message.getMessage();
+			}
+		}
+		return "unknown error";
+	}
+
+	private File importDirectory() {
+		File retVal = new File(config.getDirectory());
+		if (!retVal.isDirectory() && !retVal.mkdirs()) {
+			throw new InternalErrorException("Could not create import directory " + retVal);
+		}
+		return retVal;
+	}
+}
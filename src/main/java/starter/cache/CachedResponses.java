@@ -0,0 +1,77 @@
+package starter.cache;
+
+import ca.uhn.fhir.interceptor.api.HookParams;
+import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.EncodingEnum;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.server.RestfulServerUtils;
+import ca.uhn.fhir.rest.server.servlet.ServletRequestDetails;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Helpers for the interceptors that answer requests themselves with already encoded responses, rather than leaving
+ * them to the server.
+ */
+public final class CachedResponses {
+
+	private CachedResponses() {
+	}
+
+	/**
+	 * @return <code>true</code> if the request has no parameters other than <code>_format</code> and <code>_pretty</code>,
+	 * i.e. the response only depends on the resource and its formatting
+	 */
+	static boolean hasOnlyFormattingParameters(RequestDetails theRequestDetails) {
+		for (String parameter : theRequestDetails.getParameters().keySet()) {
+			if (!Constants.PARAM_FORMAT.equals(parameter) && !Constants.PARAM_PRETTY.equals(parameter)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return The encoding of the response to this request, or <code>null</code> if the request comes from a browser,
+	 * which gets the HTML view of the response rendered by the server
+	 */
+	public static EncodingEnum responseEncoding(RequestDetails theRequestDetails) {
+		String[] format = theRequestDetails.getParameters().get(Constants.PARAM_FORMAT);
+		String accept = theRequestDetails.getHeader(Constants.HEADER_ACCEPT);
+		if (format != null ? format.length > 0 && format[0].contains("html") : accept != null && accept.contains(Constants.CT_HTML)) {
+			return null;
+		}
+		RestfulServerUtils.ResponseEncoding encoding = RestfulServerUtils.determineResponseEncodingNoDefault(theRequestDetails, null);
+		return encoding != null ? encoding.getEncoding() : theRequestDetails.getServer().getDefaultResponseEncoding();
+	}
+
+	static boolean isPrettyPrint(RequestDetails theRequestDetails) {
+		return RestfulServerUtils.prettyPrintResponse(theRequestDetails.getServer(), theRequestDetails);
+	}
+
+	/**
+	 * Writes an encoded resource as the response, any further headers must be added before calling this
+	 */
+	static void write(HttpServletResponse theServletResponse, EncodingEnum theEncoding, byte[] theBody) throws IOException {
+		theServletResponse.setStatus(Constants.STATUS_HTTP_200_OK);
+		theServletResponse.setContentType(theEncoding.getResourceContentTypeNonLegacy() + Constants.CHARSET_UTF8_CTSUFFIX);
+		theServletResponse.setContentLength(theBody.length);
+		try (OutputStream outputStream = theServletResponse.getOutputStream()) {
+			outputStream.write(theBody);
+		}
+	}
+
+	/**
+	 * The server skips the remaining request pointcuts for a request handled by an interceptor, but access logging
+	 * relies on this one
+	 */
+	public static void processingCompletedNormally(RequestDetails theRequestDetails) {
+		HookParams params = new HookParams()
+			.add(RequestDetails.class, theRequestDetails)
+			.addIfMatchesType(ServletRequestDetails.class, theRequestDetails);
+		theRequestDetails.getInterceptorBroadcaster().callHooks(Pointcut.SERVER_PROCESSING_COMPLETED_NORMALLY, params);
+	}
+}
@@ -0,0 +1,211 @@
+package starter.cache;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.RuntimeSearchParam;
+import ca.uhn.fhir.interceptor.api.Hook;
+import ca.uhn.fhir.interceptor.api.HookParams;
+import ca.uhn.fhir.interceptor.api.Interceptor;
+import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.EncodingEnum;
+import ca.uhn.fhir.rest.api.RequestTypeEnum;
+import ca.uhn.fhir.rest.api.RestOperationTypeEnum;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.server.ETagSupportEnum;
+import ca.uhn.fhir.rest.server.IServerConformanceProvider;
+import ca.uhn.fhir.rest.server.ResourceBinding;
+import ca.uhn.fhir.rest.server.RestfulServer;
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+import ca.uhn.fhir.rest.server.servlet.ServletRequestDetails;
+import ca.uhn.fhir.rest.server.util.ISearchParamRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.hl7.fhir.instance.model.api.IBaseConformance;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Serves <code>GET [base]/metadata</code> from a precomputed, already encoded CapabilityStatement.
+ * <p>
+ * The statement is only recomputed when the resource types served or the active search parameters change, which is
+ * detected by comparing a fingerprint of both (checked at most once per second), rather than on every request or
+ * whenever the server's own short-lived cache expires. Responses carry a weak ETag derived from the encoded
+ * statement, so that clients revalidating with <code>If-None-Match</code> get a <code>304 Not Modified</code>.
+ * <p>
+ * When the resource counts are maintained in the background, the statement is also regenerated after each recount.
+ * <p>
+ * Browsers and requests with parameters other than <code>_format</code> and <code>_pretty</code> (e.g.
+ * <code>mode=terminology</code>) are handled by the server as usual.
+ */
+@Interceptor
+public class CapabilityStatementCacheInterceptor {
+
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(CapabilityStatementCacheInterceptor.class);
+
+	private static final long FINGERPRINT_CHECK_INTERVAL_MILLIS = 1000;
+	// One entry per combination of server base, encoding and formatting
+	private static final int MAXIMUM_ENTRIES = 32;
+
+	private final FhirContext fhirContext;
+	private final RestfulServer server;
+	private final ISearchParamRegistry searchParamRegistry;
+	private final ResourceCountTracker resourceCountTracker;
+	private final Cache<String, CachedStatement> cache = CacheBuilder.newBuilder()
+		.maximumSize(MAXIMUM_ENTRIES)
+		.recordStats()
+		.build();
+	private String fingerprint;
+	private long nextFingerprintCheck;
+
+	/**
+	 * @param resourceCountTracker The tracker of the resource counts shown in the statement, or <code>null</code>
+	 */
+	public CapabilityStatementCacheInterceptor(FhirContext fhirContext, RestfulServer server, ISearchParamRegistry searchParamRegistry, ResourceCountTracker resourceCountTracker) {
+		this.fhirContext = fhirContext;
+		this.server = server;
+		this.searchParamRegistry = searchParamRegistry;
+		this.resourceCountTracker = resourceCountTracker;
+	}
+
+	@Hook(Pointcut.SERVER_INCOMING_REQUEST_POST_PROCESSED)
+	public boolean incomingRequestPostProcessed(RequestDetails theRequestDetails, HttpServletRequest theServletRequest, HttpServletResponse theServletResponse) throws IOException {
+		if (theRequestDetails.getRestOperationType() != RestOperationTypeEnum.METADATA
+			|| theRequestDetails.getRequestType() != RequestTypeEnum.GET
+			|| !CachedResponses.hasOnlyFormattingParameters(theRequestDetails)) {
+			return true;
+		}
+		EncodingEnum encoding = CachedResponses.responseEncoding(theRequestDetails);
+		if (encoding != EncodingEnum.JSON && encoding != EncodingEnum.XML) {
+			return true;
+		}
+
+		boolean pretty = CachedResponses.isPrettyPrint(theRequestDetails);
+		// Resource counts are picked up when they are recounted, not on every write
+		long countsGeneration = resourceCountTracker != null ? resourceCountTracker.getGeneration() : 0;
+		String key = currentFingerprint() + '|' + countsGeneration + '|' + theRequestDetails.getFhirServerBase() + '|' + encoding + '|' + pretty;
+		CachedStatement cached;
+		try {
+			cached = cache.get(key, () -> compute(theRequestDetails, theServletRequest, encoding, pretty));
+		} catch (ExecutionException | UncheckedExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new InternalErrorException("Failed to generate the CapabilityStatement: " + e.getCause().getMessage(), e.getCause());
+		}
+
+		if (server.getETagSupport() == ETagSupportEnum.ENABLED) {
+			theServletResponse.addHeader(Constants.HEADER_ETAG, cached.etag);
+			if (matches(theRequestDetails.getHeader(Constants.HEADER_IF_NONE_MATCH), cached.etag)) {
+				theServletResponse.setStatus(Constants.STATUS_HTTP_304_NOT_MODIFIED);
+				CachedResponses.processingCompletedNormally(theRequestDetails);
+				return false;
+			}
+		}
+		CachedResponses.write(theServletResponse, encoding, cached.body);
+		CachedResponses.processingCompletedNormally(theRequestDetails);
+		return false;
+	}
+
+	@SuppressWarnings("unchecked")
+	private CachedStatement compute(RequestDetails theRequestDetails, HttpServletRequest theServletRequest, EncodingEnum theEncoding, boolean thePretty) {
+		long start = System.currentTimeMillis();
+		IServerConformanceProvider<IBaseResource> provider = (IServerConformanceProvider<IBaseResource>) server.getServerConformanceProvider();
+		IBaseResource capabilityStatement = provider.getServerConformance(theServletRequest, theRequestDetails);
+
+		// Interceptors may customize the statement, as they would for an uncached one
+		HookParams params = new HookParams()
+			.add(IBaseConformance.class, (IBaseConformance) capabilityStatement)
+			.add(RequestDetails.class, theRequestDetails)
+			.addIfMatchesType(ServletRequestDetails.class, theRequestDetails);
+		Object outcome = theRequestDetails.getInterceptorBroadcaster().callHooksAndReturnObject(Pointcut.SERVER_CAPABILITY_STATEMENT_GENERATED, params);
+		if (outcome != null) {
+			capabilityStatement = (IBaseResource) outcome;
+		}
+
+		byte[] body = theEncoding.newParser(fhirContext).setPrettyPrint(thePretty).encodeResourceToString(capabilityStatement).getBytes(StandardCharsets.UTF_8);
+		String etag = "W/\"" + Hashing.murmur3_128().hashBytes(body) + '"';
+		ourLog.info("Generated the {} CapabilityStatement in {}ms", theEncoding.getFormatContentType(), System.currentTimeMillis() - start);
+		return new CachedStatement(body, etag);
+	}
+
+	/**
+	 * @return A fingerprint of the resource types and their active search parameters, recomputed at most once per
+	 * {@link #FINGERPRINT_CHECK_INTERVAL_MILLIS}
+	 */
+	private synchronized String currentFingerprint() {
+		long now = System.currentTimeMillis();
+		if (fingerprint != null && now < nextFingerprintCheck) {
+			return fingerprint;
+		}
+		nextFingerprintCheck = now + FINGERPRINT_CHECK_INTERVAL_MILLIS;
+
+		TreeSet<String> resourceTypes = new TreeSet<>();
+		for (ResourceBinding binding : server.getResourceBindings()) {
+			resourceTypes.add(binding.getResourceName());
+		}
+		Hasher hasher = Hashing.murmur3_128().newHasher();
+		for (String resourceType : resourceTypes) {
+			hasher.putString(resourceType, StandardCharsets.UTF_8).putChar('{');
+			Map<String, RuntimeSearchParam> searchParams = new TreeMap<>(searchParamRegistry.getActiveSearchParams(resourceType));
+			for (RuntimeSearchParam searchParam : searchParams.values()) {
+				hasher.putString(searchParam.getName(), StandardCharsets.UTF_8).putChar('|')
+					.putString(String.valueOf(searchParam.getParamType()), StandardCharsets.UTF_8).putChar('|')
+					.putString(String.valueOf(searchParam.getPath()), StandardCharsets.UTF_8).putChar(';');
+			}
+			hasher.putChar('}');
+		}
+		String newFingerprint = hasher.hash().toString();
+
+		if (!newFingerprint.equals(fingerprint)) {
+			if (fingerprint != null) {
+				ourLog.info("Resource types or search parameters have changed, the CapabilityStatement will be regenerated");
+			}
+			// Entries of the previous fingerprint can no longer be requested
+			cache.invalidateAll();
+			fingerprint = newFingerprint;
+		}
+		return fingerprint;
+	}
+
+	private static boolean matches(String theIfNoneMatch, String theEtag) {
+		if (theIfNoneMatch == null) {
+			return false;
+		}
+		for (String candidate : theIfNoneMatch.split(",")) {
+			String trimmed = candidate.trim();
+			if (trimmed.equals("*") || trimmed.equals(theEtag) || ("W/" + trimmed).equals(theEtag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public long getHitCount() {
+		return cache.stats().hitCount();
+	}
+
+	public long getMissCount() {
+		return cache.stats().missCount();
+	}
+
+	private static class CachedStatement {
+		private final byte[] body;
+		private final String etag;
+
+		private CachedStatement(byte[] body, String etag) {
+			this.body = body;
+			this.etag = etag;
+		}
+	}
+}
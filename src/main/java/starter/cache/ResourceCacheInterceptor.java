@@ -0,0 +1,357 @@
+package starter.cache;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.interceptor.api.Hook;
+import ca.uhn.fhir.interceptor.api.Interceptor;
+import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.EncodingEnum;
+import ca.uhn.fhir.rest.api.RequestTypeEnum;
+import ca.uhn.fhir.rest.api.RestOperationTypeEnum;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.server.ETagSupportEnum;
+import ca.uhn.fhir.rest.server.RestfulServer;
+import ca.uhn.fhir.rest.server.interceptor.auth.AuthorizationInterceptor;
+import ca.uhn.fhir.rest.server.interceptor.consent.ConsentInterceptor;
+import ca.uhn.fhir.util.DateUtils;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.instance.model.api.IIdType;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+import static org.apache.commons.lang3.StringUtils.isNotBlank;
+
+/**
+ * Serves <code>read</code> and <code>vread</code> requests from a cache of already encoded JSON, so that repeatedly
+ * fetching the same resource neither hits the database nor re-encodes the resource.
+ * <p>
+ * Only plain JSON requests are served from the cache: requests from browsers (which get the highlighted HTML view),
+ * requests for another encoding and requests with parameters other than <code>_format</code> and
+ * <code>_pretty</code> (e.g. <code>_summary</code> or <code>_elements</code>) as well as conditional reads are
+ * handled by the server as usual. The cache is filled with the responses of such requests, and optionally with
+ * resources as they are written. It is bounded by the size of the encoded resources.
+ * <p>
+ * Cached reads are invalidated once a create, update, delete, <code>$meta-add</code>, <code>$meta-delete</code> or
+ * expunge of the resource has completed. A read that raced with such a write does not put its (possibly outdated)
+ * response into the cache, which is detected with a sequence number per stripe of resource ids.
+ * <p>
+ * Cached reads skip the hooks which run after this one, including those which check access to the resource, and a
+ * cached response is served to every client. The cache therefore stays disabled when an
+ * {@link AuthorizationInterceptor} or a {@link ConsentInterceptor} is registered with the server. It is also only
+ * invalidated by the writes of this server, so it must not be used when several servers share the database.
+ */
+@Interceptor
+public class ResourceCacheInterceptor {
+
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(ResourceCacheInterceptor.class);
+
+	private static final String USER_DATA_SEQUENCE = ResourceCacheInterceptor.class.getName() + "_SEQUENCE";
+	private static final int STRIPES = 1024;
+	private static final int ENTRY_OVERHEAD_BYTES = 128;
+
+	private final FhirContext fhirContext;
+	private final Cache<String, CachedResource> cache;
+	private final Set<String> resourceTypes;
+	private final int maxEntryBytes;
+	private final boolean preSerializeOnWrite;
+	private final boolean defaultPrettyPrint;
+	private final AtomicLongArray sequences = new AtomicLongArray(STRIPES);
+	private final AtomicLong bypassCount = new AtomicLong();
+	private volatile Boolean enabled;
+	private final StorageInterceptor storageInterceptor = new StorageInterceptor();
+
+	public ResourceCacheInterceptor(FhirContext fhirContext, long maxBytes, int maxEntryBytes, List<String> resourceTypes, boolean preSerializeOnWrite, boolean defaultPrettyPrint) {
+		this.fhirContext = fhirContext;
+		this.cache = CacheBuilder.newBuilder()
+			.maximumWeight(maxBytes)
+			.weigher((String key, CachedResource value) -> ENTRY_OVERHEAD_BYTES + key.length() * 2 + value.json.length)
+			.recordStats()
+			.build();
+		this.resourceTypes = new HashSet<>(resourceTypes);
+		this.maxEntryBytes = maxEntryBytes;
+		this.preSerializeOnWrite = preSerializeOnWrite;
+		this.defaultPrettyPrint = defaultPrettyPrint;
+	}
+
+	@Hook(Pointcut.SERVER_INCOMING_REQUEST_POST_PROCESSED)
+	public boolean incomingRequestPostProcessed(RequestDetails theRequestDetails, HttpServletResponse theServletResponse) throws IOException {
+		if (!isEnabled(theRequestDetails) || !isCacheableRead(theRequestDetails)) {
+			return true;
+		}
+
+		EncodingEnum encoding = CachedResponses.responseEncoding(theRequestDetails);
+		if (encoding != EncodingEnum.JSON) {
+			bypassCount.incrementAndGet();
+			return true;
+		}
+
+		IIdType id = theRequestDetails.getId();
+		String key = key(theRequestDetails.getResourceName(), id.getIdPart(), id.getVersionIdPart(), CachedResponses.isPrettyPrint(theRequestDetails));
+		CachedResource cached = cache.getIfPresent(key);
+		if (cached == null) {
+			// Remembered so that the response is only cached if no write to the resource completed in the meantime
+			theRequestDetails.getUserData().put(USER_DATA_SEQUENCE, sequences.get(stripe(theRequestDetails.getResourceName(), id.getIdPart())));
+			return true;
+		}
+
+		if (theRequestDetails.getServer().getETagSupport() == ETagSupportEnum.ENABLED && cached.versionId != null) {
+			theServletResponse.addHeader(Constants.HEADER_ETAG, "W/\"" + cached.versionId + '"');
+		}
+		if (cached.lastUpdated != null) {
+			theServletResponse.addHeader(Constants.HEADER_LAST_MODIFIED, DateUtils.formatDate(cached.lastUpdated));
+		}
+		CachedResponses.write(theServletResponse, encoding, cached.json);
+		CachedResponses.processingCompletedNormally(theRequestDetails);
+		return false;
+	}
+
+	@Hook(Pointcut.SERVER_OUTGOING_RESPONSE)
+	public boolean outgoingResponse(RequestDetails theRequestDetails, IBaseResource theResponseObject) {
+		Long sequence = (Long) theRequestDetails.getUserData().get(USER_DATA_SEQUENCE);
+		if (sequence == null || theResponseObject == null) {
+			return true;
+		}
+
+		IIdType id = theRequestDetails.getId();
+		put(key(theRequestDetails.getResourceName(), id.getIdPart(), id.getVersionIdPart(), CachedResponses.isPrettyPrint(theRequestDetails)), theResponseObject, sequence);
+		return true;
+	}
+
+	@Hook(Pointcut.SERVER_PROCESSING_COMPLETED)
+	public void processingCompleted(RequestDetails theRequestDetails) {
+		RestOperationTypeEnum operationType = theRequestDetails.getRestOperationType();
+		if ((operationType == RestOperationTypeEnum.META_ADD || operationType == RestOperationTypeEnum.META_DELETE) && theRequestDetails.getId() != null) {
+			invalidate(theRequestDetails.getResourceName(), theRequestDetails.getId().getIdPart(), theRequestDetails.getId().getVersionIdPart());
+		}
+	}
+
+	private void resourceWritten(IBaseResource theResource) {
+		String resourceType = fhirContext.getResourceType(theResource);
+		String idPart = theResource.getIdElement().getIdPart();
+		String versionId = theResource.getIdElement().getVersionIdPart();
+		if (!preSerializeOnWrite || !isCachedType(resourceType)) {
+			afterCompletion(committed -> invalidate(resourceType, idPart, committed ? null : versionId));
+			return;
+		}
+
+		// Encoded before the commit, as the resource may be modified by the caller afterwards. Only the default
+		// formatting is pre-serialized, as that is what clients get unless they ask otherwise.
+		CachedResource encoded = encode(theResource, defaultPrettyPrint);
+		afterCompletion(committed -> {
+			// The version of a rolled back write was never stored, and may be assigned to a later write
+			long sequence = invalidate(resourceType, idPart, committed ? null : versionId);
+			if (committed && encoded != null) {
+				put(key(resourceType, idPart, null, defaultPrettyPrint), encoded, sequence);
+				put(key(resourceType, idPart, versionId, defaultPrettyPrint), encoded, sequence);
+			}
+		});
+	}
+
+	/**
+	 * @return <code>false</code> if the server checks access to resources, which is determined once the server handles
+	 * requests, as interceptors may still be registered after the cache during startup
+	 */
+	private boolean isEnabled(RequestDetails theRequestDetails) {
+		Boolean retVal = enabled;
+		if (retVal == null) {
+			retVal = true;
+			if (theRequestDetails.getServer() instanceof RestfulServer) {
+				for (Object interceptor : ((RestfulServer) theRequestDetails.getServer()).getInterceptorService().getAllRegisteredInterceptors()) {
+					if (interceptor instanceof AuthorizationInterceptor || interceptor instanceof ConsentInterceptor) {
+						ourLog.warn("The read cache is disabled, as cached reads would bypass the registered {}", interceptor.getClass().getName());
+						retVal = false;
+						break;
+					}
+				}
+			}
+			enabled = retVal;
+		}
+		return retVal;
+	}
+
+	private boolean isCacheableRead(RequestDetails theRequestDetails) {
+		RestOperationTypeEnum operationType = theRequestDetails.getRestOperationType();
+		if (operationType != RestOperationTypeEnum.READ && operationType != RestOperationTypeEnum.VREAD) {
+			return false;
+		}
+		if (theRequestDetails.getRequestType() != RequestTypeEnum.GET || theRequestDetails.getId() == null || !isCachedType(theRequestDetails.getResourceName())) {
+			return false;
+		}
+		if (isNotBlank(theRequestDetails.getHeader(Constants.HEADER_IF_NONE_MATCH)) || isNotBlank(theRequestDetails.getHeader(Constants.HEADER_IF_MODIFIED_SINCE))) {
+			return false;
+		}
+		if (!CachedResponses.hasOnlyFormattingParameters(theRequestDetails)) {
+			bypassCount.incrementAndGet();
+			return false;
+		}
+		return true;
+	}
+
+	private boolean isCachedType(String theResourceType) {
+		return !"Binary".equals(theResourceType) && (resourceTypes.isEmpty() || resourceTypes.contains(theResourceType));
+	}
+
+	private void put(String theKey, IBaseResource theResource, long theSequence) {
+		CachedResource encoded = encode(theResource, theKey.endsWith("|pretty"));
+		if (encoded != null) {
+			put(theKey, encoded, theSequence);
+		}
+	}
+
+	private void put(String theKey, CachedResource theEncoded, long theSequence) {
+		int stripe = stripe(theKey.substring(0, theKey.indexOf('|')));
+		if (sequences.get(stripe) != theSequence) {
+			return;
+		}
+		cache.put(theKey, theEncoded);
+		// A write that completed while putting must not leave its outdated predecessor behind
+		if (sequences.get(stripe) != theSequence) {
+			cache.invalidate(theKey);
+		}
+	}
+
+	private CachedResource encode(IBaseResource theResource, boolean thePretty) {
+		byte[] json = fhirContext.newJsonParser().setPrettyPrint(thePretty).encodeResourceToString(theResource).getBytes(StandardCharsets.UTF_8);
+		if (json.length > maxEntryBytes) {
+			ourLog.debug("Not caching {}, its encoded size of {} bytes exceeds the limit", theResource.getIdElement().getValue(), json.length);
+			return null;
+		}
+		Date lastUpdated = theResource.getMeta() != null ? theResource.getMeta().getLastUpdated() : null;
+		return new CachedResource(json, theResource.getIdElement().getVersionIdPart(), lastUpdated);
+	}
+
+	/**
+	 * Invalidates the cached reads of a resource, and the given version if it is not <code>null</code>
+	 *
+	 * @return The new sequence number of the stripe of the resource
+	 */
+	private long invalidate(String theResourceType, String theIdPart, String theVersionId) {
+		long retVal = sequences.incrementAndGet(stripe(theResourceType, theIdPart));
+		for (boolean pretty : new boolean[]{false, true}) {
+			cache.invalidate(key(theResourceType, theIdPart, null, pretty));
+			if (theVersionId != null) {
+				cache.invalidate(key(theResourceType, theIdPart, theVersionId, pretty));
+			}
+		}
+		return retVal;
+	}
+
+	private static String key(String theResourceType, String theIdPart, String theVersionId, boolean thePretty) {
+		StringBuilder retVal = new StringBuilder(theResourceType).append('/').append(theIdPart);
+		if (theVersionId != null) {
+			retVal.append("/_history/").append(theVersionId);
+		}
+		return retVal.append(thePretty ? "|pretty" : "|compact").toString();
+	}
+
+	private static int stripe(String theResourceType, String theIdPart) {
+		return stripe(theResourceType + '/' + theIdPart);
+	}
+
+	private static int stripe(String theKey) {
+		int versionIndex = theKey.indexOf("/_history/");
+		String versionlessKey = versionIndex == -1 ? theKey : theKey.substring(0, versionIndex);
+		return (versionlessKey.hashCode() & Integer.MAX_VALUE) % STRIPES;
+	}
+
+	/**
+	 * Runs the task once the current transaction has completed, with whether it was committed
+	 */
+	private static void afterCompletion(Consumer<Boolean> theTask) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			theTask.accept(true);
+			return;
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+			@Override
+			public void afterCompletion(int status) {
+				theTask.accept(status == STATUS_COMMITTED);
+			}
+		});
+	}
+
+	public long getHitCount() {
+		return cache.stats().hitCount();
+	}
+
+	public long getMissCount() {
+		return cache.stats().missCount();
+	}
+
+	public long getBypassCount() {
+		return bypassCount.get();
+	}
+
+	public long getEvictionCount() {
+		return cache.stats().evictionCount();
+	}
+
+	/**
+	 * Invalidates the cache on writes, registered with the JPA interceptor service
+	 */
+	public StorageInterceptor getStorageInterceptor() {
+		return storageInterceptor;
+	}
+
+	@Interceptor
+	public class StorageInterceptor {
+
+		@Hook(Pointcut.STORAGE_PRECOMMIT_RESOURCE_CREATED)
+		public void resourceCreated(IBaseResource theResource) {
+			resourceWritten(theResource);
+		}
+
+		@Hook(Pointcut.STORAGE_PRECOMMIT_RESOURCE_UPDATED)
+		public void resourceUpdated(IBaseResource theOldResource, IBaseResource theNewResource) {
+			resourceWritten(theNewResource);
+		}
+
+		@Hook(Pointcut.STORAGE_PRECOMMIT_RESOURCE_DELETED)
+		public void resourceDeleted(IBaseResource theResource) {
+			String resourceType = fhirContext.getResourceType(theResource);
+			String idPart = theResource.getIdElement().getIdPart();
+			afterCompletion(committed -> invalidate(resourceType, idPart, null));
+		}
+
+		@Hook(Pointcut.STORAGE_PRESTORAGE_EXPUNGE_RESOURCE)
+		public void expungeResource(IIdType theId, IBaseResource theResource) {
+			String resourceType = theId.getResourceType() != null ? theId.getResourceType() : fhirContext.getResourceType(theResource);
+			afterCompletion(committed -> invalidate(resourceType, theId.getIdPart(), theId.getVersionIdPart()));
+		}
+
+		@Hook(Pointcut.STORAGE_PRESTORAGE_EXPUNGE_EVERYTHING)
+		public void expungeEverything() {
+			afterCompletion(committed -> {
+				for (int i = 0; i < STRIPES; i++) {
+					sequences.incrementAndGet(i);
+				}
+				cache.invalidateAll();
+			});
+		}
+	}
+
+	private static class CachedResource {
+		private final byte[] json;
+		private final String versionId;
+		private final Date lastUpdated;
+
+		private CachedResource(byte[] json, String versionId, Date lastUpdated) {
+			this.json = json;
+			this.versionId = versionId;
+			this.lastUpdated = lastUpdated;
+		}
+	}
+}
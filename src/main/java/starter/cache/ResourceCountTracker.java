@@ -0,0 +1,146 @@
+package starter.cache;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.interceptor.api.Hook;
+import ca.uhn.fhir.interceptor.api.Interceptor;
+import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.jpa.api.dao.DaoRegistry;
+import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
+import ca.uhn.fhir.rest.api.SummaryEnum;
+import ca.uhn.fhir.util.ExtensionConstants;
+import ca.uhn.fhir.util.ExtensionUtil;
+import ca.uhn.fhir.util.FhirTerser;
+import ca.uhn.fhir.util.StopWatch;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.hl7.fhir.instance.model.api.IBase;
+import org.hl7.fhir.instance.model.api.IBaseConformance;
+import org.hl7.fhir.instance.model.api.IBaseHasExtensions;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Maintains the per-resource-type counts shown in the CapabilityStatement without ever counting on the request path.
+ * <p>
+ * The counts are loaded on a background thread at startup and then recounted on a fixed schedule. In between, they
+ * are adjusted as resources are created and deleted, so they may drift slightly (e.g. when a deleted resource is
+ * brought back by an update) until the next recount. Until the first count has completed the CapabilityStatement
+ * carries no counts.
+ */
+@Interceptor
+public class ResourceCountTracker {
+
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(ResourceCountTracker.class);
+
+	private final FhirContext fhirContext;
+	private final DaoRegistry daoRegistry;
+	private final int refreshIntervalSeconds;
+	private final Map<String, AtomicLong> counts = new ConcurrentHashMap<>();
+	private final AtomicLong generation = new AtomicLong();
+	private final StorageInterceptor storageInterceptor = new StorageInterceptor();
+	private final ScheduledExecutorService executor;
+
+	public ResourceCountTracker(FhirContext fhirContext, DaoRegistry daoRegistry, int refreshIntervalSeconds) {
+		this.fhirContext = fhirContext;
+		this.daoRegistry = daoRegistry;
+		this.refreshIntervalSeconds = refreshIntervalSeconds;
+		this.executor = Executors.newSingleThreadScheduledExecutor(new BasicThreadFactory.Builder().namingPattern("resource-counts-%d").daemon(true).build());
+	}
+
+	public void start() {
+		executor.scheduleWithFixedDelay(this::refresh, 0, refreshIntervalSeconds, TimeUnit.SECONDS);
+	}
+
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	private void refresh() {
+		StopWatch sw = new StopWatch();
+		try {
+			for (String resourceType : daoRegistry.getRegisteredDaoTypes()) {
+				SearchParameterMap map = SearchParameterMap.newSynchronous();
+				map.setSummaryMode(SummaryEnum.COUNT);
+				Integer count = daoRegistry.getResourceDao(resourceType).search(map).size();
+				counts.computeIfAbsent(resourceType, t -> new AtomicLong()).set(count != null ? count : 0);
+			}
+			generation.incrementAndGet();
+			ourLog.info("Counted the resources of {} resource types in {}", counts.size(), sw);
+		} catch (Exception e) {
+			// Keep the schedule alive, the next refresh may succeed
+			ourLog.warn("Failed to count resources, the previous counts are kept", e);
+		}
+	}
+
+	@Hook(Pointcut.SERVER_CAPABILITY_STATEMENT_GENERATED)
+	public void capabilityStatementGenerated(IBaseConformance theCapabilityStatement) {
+		if (generation.get() == 0) {
+			return;
+		}
+		FhirTerser terser = fhirContext.newTerser();
+		for (IBase rest : terser.getValues(theCapabilityStatement, "rest")) {
+			for (IBase resource : terser.getValues(rest, "resource")) {
+				String resourceType = terser.getSinglePrimitiveValueOrNull(resource, "type");
+				AtomicLong count = resourceType != null ? counts.get(resourceType) : null;
+				if (count != null && resource instanceof IBaseHasExtensions) {
+					ExtensionUtil.setExtension(fhirContext, resource, ExtensionConstants.CONF_RESOURCE_COUNT, "decimal", Long.toString(count.get()));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Incremented whenever the counts have been reloaded, so that a cached CapabilityStatement picks up the new counts
+	 */
+	public long getGeneration() {
+		return generation.get();
+	}
+
+	/**
+	 * Counts writes, registered with the JPA interceptor service
+	 */
+	public StorageInterceptor getStorageInterceptor() {
+		return storageInterceptor;
+	}
+
+	private void adjustAfterCommit(IBaseResource theResource, int theDelta) {
+		String resourceType = fhirContext.getResourceType(theResource);
+		Runnable task = () -> {
+			AtomicLong count = counts.get(resourceType);
+			if (count != null) {
+				count.addAndGet(theDelta);
+			}
+		};
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			task.run();
+			return;
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+			@Override
+			public void afterCommit() {
+				task.run();
+			}
+		});
+	}
+
+	@Interceptor
+	public class StorageInterceptor {
+
+		@Hook(Pointcut.STORAGE_PRECOMMIT_RESOURCE_CREATED)
+		public void resourceCreated(IBaseResource theResource) {
+			adjustAfterCommit(theResource, 1);
+		}
+
+		@Hook(Pointcut.STORAGE_PRECOMMIT_RESOURCE_DELETED)
+		public void resourceDeleted(IBaseResource theResource) {
+			adjustAfterCommit(theResource, -1);
+		}
+	}
+}
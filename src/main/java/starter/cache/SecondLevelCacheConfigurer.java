@@ -0,0 +1,67 @@
+package starter.cache;
+
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cache.spi.RegionFactory;
+import org.hibernate.cfg.AvailableSettings;
+import starter.AppProperties;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import javax.cache.spi.CachingProvider;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.Properties;
+
+/**
+ * Enables the Hibernate second-level cache for a configured list of read-mostly entities (by default the terminology
+ * entities), backed by size-bounded Caffeine caches through JCache.
+ * <p>
+ * The HAPI entities carry no caching annotations, so caching is switched on per entity with
+ * <code>hibernate.classcache.*</code> and no other entity is cached. Writes through Hibernate (including bulk JPQL
+ * deletes) keep the <code>read-write</code> regions consistent; {@link SecondLevelCacheInvalidator} additionally
+ * evicts them when terminology resources are written.
+ */
+public class SecondLevelCacheConfigurer {
+
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(SecondLevelCacheConfigurer.class);
+
+	private SecondLevelCacheConfigurer() {
+	}
+
+	public static void configure(AppProperties.SecondLevelCache config, Properties properties) {
+		List<String> regions = new ArrayList<>(config.getEntities());
+		if (config.getQuery_cache()) {
+			regions.add(RegionFactory.DEFAULT_QUERY_RESULTS_REGION_UNQUALIFIED_NAME);
+			regions.add(RegionFactory.DEFAULT_UPDATE_TIMESTAMPS_REGION_UNQUALIFIED_NAME);
+		}
+
+		properties.putIfAbsent(AvailableSettings.USE_SECOND_LEVEL_CACHE, true);
+		properties.putIfAbsent(AvailableSettings.USE_QUERY_CACHE, config.getQuery_cache());
+		properties.putIfAbsent(AvailableSettings.CACHE_REGION_FACTORY, "jcache");
+		properties.putIfAbsent(AvailableSettings.GENERATE_STATISTICS, true);
+		properties.putIfAbsent(ConfigSettings.CACHE_MANAGER, createCacheManager(regions, config.getMax_entries_per_region()));
+		properties.putIfAbsent(ConfigSettings.MISSING_CACHE_STRATEGY, "fail");
+		for (String entity : config.getEntities()) {
+			properties.putIfAbsent(AvailableSettings.CLASS_CACHE_PREFIX + "." + entity, "read-write");
+		}
+		ourLog.info("Second-level cache enabled for {} with at most {} entries per region", config.getEntities(), config.getMax_entries_per_region());
+	}
+
+	private static CacheManager createCacheManager(List<String> regions, long maxEntriesPerRegion) {
+		CachingProvider cachingProvider = Caching.getCachingProvider(CaffeineCachingProvider.class.getName());
+		CacheManager retVal = cachingProvider.getCacheManager();
+
+		CaffeineConfiguration<Object, Object> configuration = new CaffeineConfiguration<>();
+		configuration.setMaximumSize(OptionalLong.of(maxEntriesPerRegion));
+		configuration.setStatisticsEnabled(true);
+		for (String region : regions) {
+			if (retVal.getCache(region) == null) {
+				retVal.createCache(region, configuration);
+			}
+		}
+		return retVal;
+	}
+}
@@ -0,0 +1,80 @@
+package starter.cache;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.interceptor.api.Hook;
+import ca.uhn.fhir.interceptor.api.Interceptor;
+import ca.uhn.fhir.interceptor.api.Pointcut;
+import com.google.common.collect.ImmutableSet;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.Cache;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Evicts the cached entities from the second-level cache once a write to a terminology resource has committed, so
+ * that terminology rows written outside of the cached entity lifecycle (e.g. by native queries) are never served
+ * stale.
+ */
+@Interceptor
+public class SecondLevelCacheInvalidator {
+
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(SecondLevelCacheInvalidator.class);
+
+	private static final Set<String> TERMINOLOGY_RESOURCE_TYPES = ImmutableSet.of("CodeSystem", "ValueSet", "ConceptMap");
+
+	private final FhirContext fhirContext;
+	private final Cache cache;
+	private final List<Class<?>> entityClasses = new ArrayList<>();
+
+	public SecondLevelCacheInvalidator(FhirContext fhirContext, EntityManagerFactory entityManagerFactory, List<String> entities) {
+		this.fhirContext = fhirContext;
+		this.cache = entityManagerFactory.getCache();
+		for (String entity : entities) {
+			try {
+				entityClasses.add(Class.forName(entity));
+			} catch (ClassNotFoundException e) {
+				ourLog.warn("Unknown second-level cache entity {}", entity);
+			}
+		}
+	}
+
+	@Hook(Pointcut.STORAGE_PRECOMMIT_RESOURCE_CREATED)
+	public void resourceCreated(IBaseResource theResource) {
+		evictIfTerminologyResource(theResource);
+	}
+
+	@Hook(Pointcut.STORAGE_PRECOMMIT_RESOURCE_UPDATED)
+	public void resourceUpdated(IBaseResource theOldResource, IBaseResource theNewResource) {
+		evictIfTerminologyResource(theNewResource);
+	}
+
+	@Hook(Pointcut.STORAGE_PRECOMMIT_RESOURCE_DELETED)
+	public void resourceDeleted(IBaseResource theResource) {
+		evictIfTerminologyResource(theResource);
+	}
+
+	private void evictIfTerminologyResource(IBaseResource theResource) {
+		if (!TERMINOLOGY_RESOURCE_TYPES.contains(fhirContext.getResourceType(theResource))) {
+			return;
+		}
+		afterCommit(() -> entityClasses.forEach(cache::evict));
+	}
+
+	private static void afterCommit(Runnable theTask) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			theTask.run();
+			return;
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+			@Override
+			public void afterCommit() {
+				theTask.run();
+			}
+		});
+	}
+}
@@ -0,0 +1,274 @@
+package starter.generator;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
+import ca.uhn.fhir.util.StopWatch;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Resource;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Generates a synthetic phenopacket dataset for load testing: individuals, each with a number of phenotypic features,
+ * a disease and genomic variants, all declaring the phenopacket profiles (see {@link PhenopacketResourceFactory} on
+ * conformance).
+ * <p>
+ * Individuals are assigned to cohorts whose sizes follow a Zipf distribution (<code>cohort_skew</code>). The members
+ * of a cohort share a disease and a set of common phenotypes, and how concentrated the phenotypes are is controlled by
+ * <code>feature_skew</code>. Resources are generated one individual at a time, so arbitrarily large datasets can be
+ * streamed without holding them in memory, either as one NDJSON file per resource type (as expected by
+ * <code>$import</code>) or as transaction bundles.
+ * <p>
+ * Usage: <code>PhenopacketDatasetGenerator --out=target/dataset [--format=ndjson|transaction] [--patients=1000]
+ * [--cohorts=10] [--cohort_skew=1.0] [--min_features=1] [--max_features=10] [--feature_skew=1.0]
+ * [--variants=1] [--bundle_size=10] [--seed=0] [--id_prefix=pp-]</code>
+ */
+public class PhenopacketDatasetGenerator {
+
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(PhenopacketDatasetGenerator.class);
+
+	private int patients = 1000;
+	private int cohorts = 10;
+	private double cohortSkew = 1.0;
+	private int minFeatures = 1;
+	private int maxFeatures = 10;
+	private double featureSkew = 1.0;
+	private int variants = 1;
+	private long seed = 0;
+	private String idPrefix = "pp-";
+
+	public static void main(String[] args) throws IOException {
+		Map<String, String> options = new HashMap<>();
+		for (String arg : args) {
+			if (!arg.startsWith("--") || !arg.contains("=")) {
+				throw new IllegalArgumentException("Expected --name=value but got " + arg);
+			}
+			options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+		}
+
+		PhenopacketDatasetGenerator generator = new PhenopacketDatasetGenerator()
+			.setPatients(Integer.parseInt(options.getOrDefault("patients", "1000")))
+			.setCohorts(Integer.parseInt(options.getOrDefault("cohorts", "10")))
+			.setCohortSkew(Double.parseDouble(options.getOrDefault("cohort_skew", "1.0")))
+			.setMinFeatures(Integer.parseInt(options.getOrDefault("min_features", "1")))
+			.setMaxFeatures(Integer.parseInt(options.getOrDefault("max_features", "10")))
+			.setFeatureSkew(Double.parseDouble(options.getOrDefault("feature_skew", "1.0")))
+			.setVariants(Integer.parseInt(options.getOrDefault("variants", "1")))
+			.setSeed(Long.parseLong(options.getOrDefault("seed", "0")))
+			.setIdPrefix(options.getOrDefault("id_prefix", "pp-"));
+
+		File out = new File(options.getOrDefault("out", "target/dataset"));
+		String format = options.getOrDefault("format", "ndjson");
+		StopWatch sw = new StopWatch();
+		long resources;
+		if ("ndjson".equals(format)) {
+			resources = generator.writeNdjson(out);
+		} else if ("transaction".equals(format)) {
+			resources = generator.writeTransactions(out, Integer.parseInt(options.getOrDefault("bundle_size", "10")));
+		} else {
+			throw new IllegalArgumentException("Unknown format " + format + ", expected ndjson or transaction");
+		}
+		ourLog.info("Generated {} resources for {} patients to {} in {} ({}/sec)", resources, generator.patients, out, sw, sw.formatThroughput(resources, TimeUnit.SECONDS));
+	}
+
+	/**
+	 * Generates the dataset, passing all resources of one individual (the Patient first) to the consumer at a time.
+	 */
+	public void generate(Consumer<List<Resource>> consumer) {
+		Random random = new Random(seed);
+		PhenopacketResourceFactory factory = new PhenopacketResourceFactory(random, featureSkew);
+		ZipfSampler cohortSampler = new ZipfSampler(Math.max(1, cohorts), cohortSkew);
+
+		for (int i = 0; i < patients; i++) {
+			int cohort = cohortSampler.sample(random);
+			String patientId = idPrefix + i;
+			String patientReference = "Patient/" + patientId;
+
+			List<Resource> resources = new ArrayList<>();
+			resources.add(factory.individual(patientId));
+			int features = minFeatures + (maxFeatures > minFeatures ? random.nextInt(maxFeatures - minFeatures + 1) : 0);
+			for (int j = 0; j < features; j++) {
+				resources.add(factory.phenotypicFeature(patientId + "-f" + j, patientReference, factory.hpoCode(cohort)));
+			}
+			String mondoCode = PhenopacketResourceFactory.MONDO_CODES[cohort % PhenopacketResourceFactory.MONDO_CODES.length];
+			resources.add(factory.disease(patientId + "-d0", patientReference, mondoCode));
+			for (int j = 0; j < variants; j++) {
+				resources.add(factory.variant(patientId + "-v" + j, patientReference));
+			}
+			consumer.accept(resources);
+		}
+	}
+
+	/**
+	 * Writes one <code>[ResourceType].ndjson</code> file per resource type to the given directory.
+	 *
+	 * @return The number of resources written
+	 */
+	public long writeNdjson(File directory) throws IOException {
+		mkdirs(directory);
+		IParser parser = FhirContext.forR4Cached().newJsonParser().setPrettyPrint(false);
+		Map<String, Writer> writers = new HashMap<>();
+		long[] count = new long[1];
+		try {
+			generate(resources -> {
+				for (Resource resource : resources) {
+					try {
+						Writer writer = writers.get(resource.fhirType());
+						if (writer == null) {
+							writer = newWriter(new File(directory, resource.fhirType() + ".ndjson"));
+							writers.put(resource.fhirType(), writer);
+						}
+						parser.encodeResourceToWriter(resource, writer);
+						writer.write('\n');
+						count[0]++;
+					} catch (IOException e) {
+						throw new DatasetWriteException(e);
+					}
+				}
+			});
+		} catch (DatasetWriteException e) {
+			throw e.getCause();
+		} finally {
+			for (Writer writer : writers.values()) {
+				writer.close();
+			}
+		}
+		return count[0];
+	}
+
+	/**
+	 * Writes transaction bundles of <code>bundleSize</code> individuals each to the given directory. Resources are
+	 * written with PUT, so that the ids assigned by the generator (and the references between them) are kept.
+	 *
+	 * @return The number of resources written
+	 */
+	public long writeTransactions(File directory, int bundleSize) throws IOException {
+		mkdirs(directory);
+		IParser parser = FhirContext.forR4Cached().newJsonParser().setPrettyPrint(false);
+		long[] count = new long[1];
+		int[] bundles = new int[1];
+		Bundle[] bundle = new Bundle[]{newTransaction()};
+		int[] patientsInBundle = new int[1];
+		try {
+			generate(resources -> {
+				for (Resource resource : resources) {
+					bundle[0].addEntry()
+						.setFullUrl(resource.fhirType() + "/" + resource.getIdElement().getIdPart())
+						.setResource(resource)
+						.getRequest().setMethod(Bundle.HTTPVerb.PUT).setUrl(resource.fhirType() + "/" + resource.getIdElement().getIdPart());
+					count[0]++;
+				}
+				if (++patientsInBundle[0] >= bundleSize) {
+					writeBundle(parser, directory, ++bundles[0], bundle[0]);
+					bundle[0] = newTransaction();
+					patientsInBundle[0] = 0;
+				}
+			});
+			if (patientsInBundle[0] > 0) {
+				writeBundle(parser, directory, ++bundles[0], bundle[0]);
+			}
+		} catch (DatasetWriteException e) {
+			throw e.getCause();
+		}
+		return count[0];
+	}
+
+	private static Bundle newTransaction() {
+		Bundle retVal = new Bundle();
+		retVal.setType(Bundle.BundleType.TRANSACTION);
+		return retVal;
+	}
+
+	private static void writeBundle(IParser parser, File directory, int index, Bundle bundle) {
+		try (Writer writer = newWriter(new File(directory, String.format("transaction-%06d.json", index)))) {
+			parser.encodeResourceToWriter(bundle, writer);
+		} catch (IOException e) {
+			throw new DatasetWriteException(e);
+		}
+	}
+
+	private static Writer newWriter(File file) throws IOException {
+		return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8), 64 * 1024);
+	}
+
+	private static void mkdirs(File directory) throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Could not create directory " + directory);
+		}
+	}
+
+	public PhenopacketDatasetGenerator setPatients(int patients) {
+		this.patients = patients;
+		return this;
+	}
+
+	public PhenopacketDatasetGenerator setCohorts(int cohorts) {
+		this.cohorts = cohorts;
+		return this;
+	}
+
+	public PhenopacketDatasetGenerator setCohortSkew(double cohortSkew) {
+		this.cohortSkew = cohortSkew;
+		return this;
+	}
+
+	public PhenopacketDatasetGenerator setMinFeatures(int minFeatures) {
+		this.minFeatures = minFeatures;
+		return this;
+	}
+
+	public PhenopacketDatasetGenerator setMaxFeatures(int maxFeatures) {
+		this.maxFeatures = maxFeatures;
+		return this;
+	}
+
+	public PhenopacketDatasetGenerator setFeatureSkew(double featureSkew) {
+		this.featureSkew = featureSkew;
+		return this;
+	}
+
+	public PhenopacketDatasetGenerator setVariants(int variants) {
+		this.variants = variants;
+		return this;
+	}
+
+	public PhenopacketDatasetGenerator setSeed(long seed) {
+		this.seed = seed;
+		return this;
+	}
+
+	/**
+	 * Sets the prefix of the generated Patient ids (the ids of the other resources start with the Patient id)
+	 */
+	public PhenopacketDatasetGenerator setIdPrefix(String idPrefix) {
+		this.idPrefix = idPrefix;
+		return this;
+	}
+
+	/**
+	 * Carries an {@link IOException} out of the consumer passed to {@link #generate(Consumer)}
+	 */
+	private static class DatasetWriteException extends RuntimeException {
+		private DatasetWriteException(IOException cause) {
+			super(cause);
+		}
+
+		@Override
+		public synchronized IOException getCause() {
+			return (IOException) super.getCause();
+		}
+	}
+}
@@ -0,0 +1,111 @@
+package starter.generator;
+
+import org.hl7.fhir.r4.model.CodeableConcept;
+import org.hl7.fhir.r4.model.Coding;
+import org.hl7.fhir.r4.model.DateType;
+import org.hl7.fhir.r4.model.Enumerations;
+import org.hl7.fhir.r4.model.Condition;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.Reference;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.Random;
+
+/**
+ * Builds R4 resources declaring the profiles of the <code>hl7.fhir.us.ga4gh.phenopacket</code> implementation guide:
+ * individuals, phenotypic features (HPO), diseases (MONDO) and genomic variants.
+ * <p>
+ * The resources only declare the profile URLs, they are not checked against the installed implementation guide. Post
+ * a sample to <code>$validate</code> on a server with the guide installed before relying on them being conformant.
+ * <p>
+ * Codes are drawn from small fixed tables; which codes are common is controlled by the exponent of a Zipf
+ * distribution, so that search benchmarks see a realistic mix of very common and rare codes.
+ */
+public class PhenopacketResourceFactory {
+
+	public static final String PROFILE_BASE = "http://ga4gh.org/fhir/phenopackets/StructureDefinition/";
+	public static final String HPO_SYSTEM = "http://purl.obolibrary.org/obo/hp.owl";
+	public static final String MONDO_SYSTEM = "http://purl.obolibrary.org/obo/mondo.owl";
+	public static final String LOINC_SYSTEM = "http://loinc.org";
+	public static final String HGNC_SYSTEM = "http://www.genenames.org/geneId";
+
+	static final String[] HPO_CODES = {
+		"HP:0001250", "HP:0001263", "HP:0000252", "HP:0001631", "HP:0000365", "HP:0004322", "HP:0001508", "HP:0000486",
+		"HP:0002650", "HP:0001382", "HP:0000717", "HP:0001249", "HP:0000256", "HP:0001290", "HP:0000219", "HP:0000316",
+		"HP:0001629", "HP:0000278", "HP:0001156", "HP:0000494", "HP:0000407", "HP:0001639", "HP:0002119", "HP:0000639",
+		"HP:0001166", "HP:0000545", "HP:0002007", "HP:0000154", "HP:0001260", "HP:0000750", "HP:0001344", "HP:0000729"
+	};
+	static final String[] MONDO_CODES = {
+		"MONDO:0007739", "MONDO:0008300", "MONDO:0009061", "MONDO:0010726", "MONDO:0011073", "MONDO:0007523",
+		"MONDO:0008608", "MONDO:0019391", "MONDO:0010679", "MONDO:0008564", "MONDO:0007254", "MONDO:0018997"
+	};
+	static final String[][] GENES = {
+		{"HGNC:1100", "BRCA1"}, {"HGNC:1101", "BRCA2"}, {"HGNC:1884", "CFTR"}, {"HGNC:3603", "FBN1"}, {"HGNC:7577", "MYH7"},
+		{"HGNC:11998", "TP53"}, {"HGNC:3689", "FGFR3"}, {"HGNC:2928", "DMD"}, {"HGNC:9588", "PTEN"}, {"HGNC:7765", "NF1"}
+	};
+
+	private final Random random;
+	private final ZipfSampler hpoSampler;
+
+	public PhenopacketResourceFactory(Random random, double featureSkew) {
+		this.random = random;
+		this.hpoSampler = new ZipfSampler(HPO_CODES.length, featureSkew);
+	}
+
+	/**
+	 * @param offset Rotates the code table, so that different cohorts have different common phenotypes
+	 */
+	public String hpoCode(int offset) {
+		return HPO_CODES[(hpoSampler.sample(random) + offset) % HPO_CODES.length];
+	}
+
+	public Patient individual(String id) {
+		Patient retVal = new Patient();
+		retVal.setId(id);
+		retVal.getMeta().addProfile(PROFILE_BASE + "Individual");
+		retVal.addIdentifier().setSystem("urn:phenopacket:generated").setValue(id != null ? id : Long.toHexString(random.nextLong()));
+		retVal.setGender(random.nextBoolean() ? Enumerations.AdministrativeGender.FEMALE : Enumerations.AdministrativeGender.MALE);
+		retVal.setBirthDateElement(new DateType(new GregorianCalendar(1940 + random.nextInt(80), random.nextInt(12), 1 + random.nextInt(28)).getTime()));
+		return retVal;
+	}
+
+	public Observation phenotypicFeature(String id, String patientReference, String hpoCode) {
+		Observation retVal = new Observation();
+		retVal.setId(id);
+		retVal.getMeta().addProfile(PROFILE_BASE + "PhenotypicFeature");
+		retVal.setStatus(Observation.ObservationStatus.FINAL);
+		retVal.setCode(new CodeableConcept().addCoding(new Coding(HPO_SYSTEM, hpoCode, null)));
+		retVal.setSubject(new Reference(patientReference));
+		return retVal;
+	}
+
+	public Condition disease(String id, String patientReference, String mondoCode) {
+		Condition retVal = new Condition();
+		retVal.setId(id);
+		retVal.getMeta().addProfile(PROFILE_BASE + "Disease");
+		retVal.setCode(new CodeableConcept().addCoding(new Coding(MONDO_SYSTEM, mondoCode, null)));
+		retVal.setSubject(new Reference(patientReference));
+		retVal.setOnset(new DateType(new GregorianCalendar(2000 + random.nextInt(20), Calendar.JANUARY, 1).getTime()));
+		return retVal;
+	}
+
+	public Observation variant(String id, String patientReference) {
+		String[] gene = GENES[random.nextInt(GENES.length)];
+		Observation retVal = new Observation();
+		retVal.setId(id);
+		retVal.getMeta().addProfile(PROFILE_BASE + "Variant");
+		retVal.setStatus(Observation.ObservationStatus.FINAL);
+		retVal.setCode(new CodeableConcept().addCoding(new Coding(LOINC_SYSTEM, "69548-6", "Genetic variant assessment")));
+		retVal.setSubject(new Reference(patientReference));
+		retVal.setValue(new CodeableConcept().addCoding(new Coding(LOINC_SYSTEM, "LA9633-4", "Present")));
+		retVal.addComponent()
+			.setCode(new CodeableConcept().addCoding(new Coding(LOINC_SYSTEM, "48018-6", "Gene studied [ID]")))
+			.setValue(new CodeableConcept().addCoding(new Coding(HGNC_SYSTEM, gene[0], gene[1])));
+		retVal.addComponent()
+			.setCode(new CodeableConcept().addCoding(new Coding(LOINC_SYSTEM, "48004-6", "DNA change (c.HGVS)")))
+			.setValue(new CodeableConcept().addCoding(new Coding("http://varnomen.hgvs.org", "c." + (1 + random.nextInt(5000)) + "A>G", null)));
+		return retVal;
+	}
+}
@@ -0,0 +1,32 @@
+package starter.generator;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Samples indexes <code>0..n-1</code> where index <code>k</code> has a probability proportional to
+ * <code>1 / (k + 1)^exponent</code>. An exponent of 0 samples uniformly, larger exponents concentrate the samples on
+ * the first indexes.
+ */
+class ZipfSampler {
+
+	private final double[] cumulative;
+
+	ZipfSampler(int n, double exponent) {
+		cumulative = new double[n];
+		double sum = 0;
+		for (int k = 0; k < n; k++) {
+			sum += 1.0 / Math.pow(k + 1, exponent);
+			cumulative[k] = sum;
+		}
+		for (int k = 0; k < n; k++) {
+			cumulative[k] /= sum;
+		}
+	}
+
+	int sample(Random random) {
+		int index = Arrays.binarySearch(cumulative, random.nextDouble());
+		int retVal = index >= 0 ? index : -index - 1;
+		return Math.min(retVal, cumulative.length - 1);
+	}
+}
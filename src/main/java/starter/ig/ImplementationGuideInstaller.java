@@ -0,0 +1,333 @@
+package starter.ig;
+
+import ca.uhn.fhir.context.ConfigurationException;
+import ca.uhn.fhir.jpa.packages.IHapiPackageCacheManager;
+import ca.uhn.fhir.jpa.packages.IPackageInstallerSvc;
+import ca.uhn.fhir.jpa.packages.PackageInstallationSpec;
+import ca.uhn.fhir.util.StopWatch;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.Hashing;
+import org.apache.commons.io.IOUtils;
+import org.hl7.fhir.utilities.npm.NpmPackage;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import starter.AppProperties;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.apache.commons.lang3.StringUtils.isBlank;
+import static org.apache.commons.lang3.StringUtils.isNotBlank;
+
+/**
+ * Installs the implementation guides configured under <code>hapi.fhir.implementationguides</code>.
+ * <p>
+ * The dependency graph of all configured guides is resolved once up front, after which the packages are
+ * installed level by level (dependencies first), with the packages of a single level installed in parallel. Packages
+ * are installed by searching for each conformance resource by canonical URL before writing it, so packages of a level
+ * which carry resources with the same canonical URL are installed one after the other, as installing them at the same
+ * time would create duplicates.
+ * Packages whose name, version and content hash match what is already stored in the package cache, and whose
+ * installation completed on a previous start, are skipped. Completed installations are recorded in a ledger file, which
+ * must be on a persistent volume: the packages are stored in the database, but without the ledger a restarted server
+ * cannot tell whether their installation completed, and installs them all again.
+ * <p>
+ * If a {@link PackageCacheDirectory} is configured, packages found there are used instead of fetching them, and in
+ * offline mode a package missing from that directory is an error rather than a reason to go to the network.
+ */
+public class ImplementationGuideInstaller {
+
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(ImplementationGuideInstaller.class);
+
+	static final List<String> CORE_PACKAGES = ImmutableList.of("hl7.fhir.r2.core", "hl7.fhir.r3.core", "hl7.fhir.r4.core", "hl7.fhir.r5.core");
+	// The resource types installed from a package by default
+	private static final String[] INSTALLED_TYPES = {"NamingSystem", "CodeSystem", "ValueSet", "StructureDefinition", "ConceptMap", "SearchParameter", "Subscription"};
+
+	private final AppProperties appProperties;
+	private final IPackageInstallerSvc packageInstallerSvc;
+	private final IHapiPackageCacheManager packageCacheManager;
+	private final PackageCacheDirectory packageCacheDirectory;
+	private final ResourceLoader resourceLoader = new DefaultResourceLoader();
+
+	public ImplementationGuideInstaller(AppProperties appProperties, IPackageInstallerSvc packageInstallerSvc, IHapiPackageCacheManager packageCacheManager) {
+		this.appProperties = appProperties;
+		this.packageInstallerSvc = packageInstallerSvc;
+		this.packageCacheManager = packageCacheManager;
+		String packageCacheDir = appProperties.getIg_install().getPackage_cache_dir();
+		this.packageCacheDirectory = packageCacheDir != null ? new PackageCacheDirectory(packageCacheDir) : null;
+	}
+
+	public void install(Map<String, AppProperties.ImplementationGuide> guides) {
+		StopWatch sw = new StopWatch();
+		AppProperties.IgInstall config = appProperties.getIg_install();
+		if (config.getSkip_unchanged() && isBlank(config.getLedger_file())) {
+			throw new ConfigurationException("hapi.fhir.ig_install.skip_unchanged requires hapi.fhir.ig_install.ledger_file, a file on a persistent volume");
+		}
+		Properties ledger = loadLedger(config.getLedger_file());
+
+		Map<String, PackageNode> graph = new LinkedHashMap<>();
+		for (AppProperties.ImplementationGuide guide : guides.values()) {
+			try {
+				IHapiPackageCacheManager.PackageContents stored = packageCacheManager.loadPackageContents(guide.getName(), guide.getVersion());
+				byte[] contents = resolveContents(guide.getName(), guide.getVersion(), guide.getUrl(), stored);
+				addToGraph(guide.getName(), guide.getVersion(), contents, stored, graph, ledger);
+			} catch (IOException e) {
+				throw new ConfigurationException("Could not resolve implementation guide " + guide.getName() + "#" + guide.getVersion(), e);
+			}
+		}
+		ourLog.info("Resolved {} implementation guide package(s) in {}", graph.size(), sw);
+
+		Map<Integer, List<PackageNode>> levels = new TreeMap<>();
+		Map<String, Integer> levelCache = new HashMap<>();
+		for (PackageNode node : graph.values()) {
+			levels.computeIfAbsent(level(node, graph, levelCache, new HashSet<>()), k -> new ArrayList<>()).add(node);
+		}
+
+		int installed = 0;
+		int skipped = 0;
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, config.getParallelism()));
+		try {
+			for (List<PackageNode> level : levels.values()) {
+				List<PackageNode> changed = new ArrayList<>();
+				for (PackageNode node : level) {
+					if (config.getSkip_unchanged() && node.unchanged) {
+						ourLog.info("Skipping implementation guide package {}, content hash is unchanged", node.id);
+						skipped++;
+						continue;
+					}
+					changed.add(node);
+					installed++;
+				}
+				List<Future<?>> futures = new ArrayList<>();
+				for (List<PackageNode> group : groupBySharedCanonicals(changed)) {
+					futures.add(executor.submit(() -> group.forEach(node -> installNode(node, ledger))));
+				}
+				for (Future<?> future : futures) {
+					future.get();
+				}
+			}
+		} catch (ExecutionException e) {
+			throw new ConfigurationException("Failed to install implementation guides: " + e.getCause().getMessage(), e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ConfigurationException("Interrupted while installing implementation guides", e);
+		} finally {
+			executor.shutdownNow();
+			saveLedger(config.getLedger_file(), ledger);
+		}
+
+		ourLog.info("Installed {} and skipped {} implementation guide package(s) in {}", installed, skipped, sw);
+	}
+
+	private void installNode(PackageNode node, Properties ledger) {
+		StopWatch sw = new StopWatch();
+		PackageInstallationSpec packageInstallationSpec = new PackageInstallationSpec()
+			.setName(node.name)
+			.setVersion(node.version)
+			.setPackageContents(node.contents)
+			.setInstallMode(PackageInstallationSpec.InstallModeEnum.STORE_AND_INSTALL);
+		packageInstallerSvc.install(packageInstallationSpec);
+		synchronized (ledger) {
+			ledger.setProperty(node.id, node.hash);
+		}
+		ourLog.info("Installed implementation guide package {} in {}", node.id, sw);
+	}
+
+	/**
+	 * @param stored The package as it was stored in the package cache before this installer ran, or <code>null</code>
+	 */
+	private void addToGraph(String name, String version, byte[] contents, IHapiPackageCacheManager.PackageContents stored, Map<String, PackageNode> graph, Properties ledger) throws IOException {
+		PackageNode node = new PackageNode(name, version, contents);
+		node.unchanged = stored != null
+			&& node.hash.equals(sha256(stored.getContents()))
+			&& node.hash.equals(ledger.getProperty(node.id));
+		graph.put(node.id, node);
+
+		NpmPackage npmPackage = NpmPackage.fromPackage(new ByteArrayInputStream(contents));
+		for (NpmPackage.PackageResourceInformation resource : npmPackage.listIndexedResources(INSTALLED_TYPES)) {
+			if (isNotBlank(resource.getUrl())) {
+				node.canonicalUrls.add(resource.getUrl());
+			}
+		}
+
+		if (!appProperties.getInstall_transitive_ig_dependencies()) {
+			return;
+		}
+
+		for (String dependency : npmPackage.dependencies()) {
+			String dependencyName = dependency.substring(0, dependency.indexOf('#'));
+			String dependencyVersion = dependency.substring(dependency.indexOf('#') + 1);
+			node.dependencies.add(dependency);
+			if (CORE_PACKAGES.contains(dependencyName) || graph.containsKey(dependency)) {
+				continue;
+			}
+			IHapiPackageCacheManager.PackageContents storedDependency = packageCacheManager.loadPackageContents(dependencyName, dependencyVersion);
+			byte[] dependencyContents = resolveContents(dependencyName, dependencyVersion, null, storedDependency);
+			addToGraph(dependencyName, dependencyVersion, dependencyContents, storedDependency, graph, ledger);
+		}
+	}
+
+	/**
+	 * @param levelCache The levels of the packages already computed
+	 * @param inProgress The packages whose level is being computed, to break dependency cycles
+	 */
+	private int level(PackageNode node, Map<String, PackageNode> graph, Map<String, Integer> levelCache, Set<String> inProgress) {
+		Integer cached = levelCache.get(node.id);
+		if (cached != null) {
+			return cached;
+		}
+		inProgress.add(node.id);
+		int retVal = 0;
+		for (String dependency : node.dependencies) {
+			PackageNode dependencyNode = graph.get(dependency);
+			if (dependencyNode == null) {
+				continue;
+			}
+			if (inProgress.contains(dependency)) {
+				ourLog.warn("Implementation guide package {} depends on {}, which depends on it in turn, ignoring that dependency", node.id, dependency);
+				continue;
+			}
+			retVal = Math.max(retVal, level(dependencyNode, graph, levelCache, inProgress) + 1);
+		}
+		inProgress.remove(node.id);
+		levelCache.put(node.id, retVal);
+		return retVal;
+	}
+
+	/**
+	 * @return The packages grouped so that packages sharing a canonical URL, directly or through other packages, are
+	 * in the same group
+	 */
+	private static List<List<PackageNode>> groupBySharedCanonicals(List<PackageNode> nodes) {
+		List<List<PackageNode>> retVal = new ArrayList<>();
+		List<Set<String>> groupCanonicals = new ArrayList<>();
+		for (PackageNode node : nodes) {
+			List<PackageNode> group = new ArrayList<>(Collections.singletonList(node));
+			Set<String> canonicals = new HashSet<>(node.canonicalUrls);
+			for (int i = retVal.size() - 1; i >= 0; i--) {
+				if (!Collections.disjoint(groupCanonicals.get(i), canonicals)) {
+					group.addAll(0, retVal.remove(i));
+					canonicals.addAll(groupCanonicals.remove(i));
+				}
+			}
+			retVal.add(group);
+			groupCanonicals.add(canonicals);
+		}
+		return retVal;
+	}
+
+	private byte[] resolveContents(String name, String version, String url, IHapiPackageCacheManager.PackageContents stored) throws IOException {
+		if (packageCacheDirectory != null) {
+			byte[] retVal = packageCacheDirectory.load(name, version);
+			if (retVal != null) {
+				return retVal;
+			}
+		}
+
+		// Registry packages are immutable once published, packages fetched by URL are only refetched to detect changes
+		// when asked to, as the name and version they are configured with may not change when their contents do
+		AppProperties.IgInstall config = appProperties.getIg_install();
+		if (stored != null && (isBlank(url) || config.getOffline() || !config.getRefresh_url_packages())) {
+			return stored.getContents();
+		}
+
+		if (config.getOffline()) {
+			throw new IOException("Package " + name + "#" + version + " is neither stored nor in the package cache directory, and offline mode is enabled");
+		}
+
+		if (isNotBlank(url)) {
+			return fetch(url);
+		}
+
+		// Fetches the package from the package registry and adds it to the package cache
+		packageCacheManager.loadPackage(name, version);
+		IHapiPackageCacheManager.PackageContents retVal = packageCacheManager.loadPackageContents(name, version);
+		if (retVal == null) {
+			throw new IOException("Package " + name + "#" + version + " could not be loaded from the package registry");
+		}
+		return retVal.getContents();
+	}
+
+	private byte[] fetch(String url) throws IOException {
+		Resource resource = resourceLoader.getResource(url);
+		try (InputStream inputStream = resource.getInputStream()) {
+			return IOUtils.toByteArray(inputStream);
+		}
+	}
+
+	private static String sha256(byte[] contents) {
+		return Hashing.sha256().hashBytes(contents).toString();
+	}
+
+	private static Properties loadLedger(String ledgerFile) {
+		Properties retVal = new Properties();
+		if (isBlank(ledgerFile)) {
+			return retVal;
+		}
+		File file = new File(ledgerFile);
+		if (file.exists()) {
+			try (InputStream inputStream = new FileInputStream(file)) {
+				retVal.load(inputStream);
+			} catch (IOException e) {
+				ourLog.warn("Could not read implementation guide install ledger {}, all packages will be installed", ledgerFile, e);
+			}
+		}
+		return retVal;
+	}
+
+	private static void saveLedger(String ledgerFile, Properties ledger) {
+		if (isBlank(ledgerFile)) {
+			return;
+		}
+		File file = new File(ledgerFile);
+		if (file.getParentFile() != null) {
+			file.getParentFile().mkdirs();
+		}
+		try (OutputStream outputStream = new FileOutputStream(file)) {
+			synchronized (ledger) {
+				ledger.store(outputStream, "Installed implementation guide packages (name#version=sha256)");
+			}
+		} catch (IOException e) {
+			ourLog.warn("Could not write implementation guide install ledger {}", ledgerFile, e);
+		}
+	}
+
+	private static class PackageNode {
+		private final String id;
+		private final String name;
+		private final String version;
+		private final byte[] contents;
+		private final String hash;
+		private final List<String> dependencies = new ArrayList<>();
+		private final Set<String> canonicalUrls = new HashSet<>();
+		private boolean unchanged;
+
+		private PackageNode(String name, String version, byte[] contents) {
+			this.id = name + "#" + version;
+			this.name = name;
+			this.version = version;
+			this.contents = contents;
+			this.hash = sha256(contents);
+		}
+	}
+}
@@ -0,0 +1,97 @@
+package starter.ig;
+
+import org.apache.commons.io.IOUtils;
+import org.hl7.fhir.utilities.npm.NpmPackage;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.ConfigurationPropertySources;
+import org.springframework.boot.env.YamlPropertySourceLoader;
+import org.springframework.core.env.PropertySource;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import starter.AppProperties;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import static org.apache.commons.lang3.StringUtils.isNotBlank;
+
+/**
+ * Command line tool that resolves the implementation guides configured under
+ * <code>hapi.fhir.implementationguides</code>, including their transitive dependencies, into a
+ * {@link PackageCacheDirectory}. Point <code>hapi.fhir.ig_install.package_cache_dir</code> at the resulting
+ * directory and enable <code>hapi.fhir.ig_install.offline</code> to start the server without any network access.
+ * <p>
+ * Usage: <code>PackageCacheBuilder [output directory] [configuration file]</code>. The output directory defaults to
+ * the configured <code>package_cache_dir</code> and the configuration file to <code>classpath:application.yaml</code>.
+ */
+public class PackageCacheBuilder {
+
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(PackageCacheBuilder.class);
+
+	private final AppProperties appProperties;
+	private final PackageCacheDirectory packageCacheDirectory;
+	private final ResourceLoader resourceLoader = new DefaultResourceLoader();
+
+	public PackageCacheBuilder(AppProperties appProperties, PackageCacheDirectory packageCacheDirectory) {
+		this.appProperties = appProperties;
+		this.packageCacheDirectory = packageCacheDirectory;
+	}
+
+	public static void main(String[] args) throws IOException {
+		String configLocation = args.length > 1 ? args[1] : "classpath:application.yaml";
+		AppProperties appProperties = loadAppProperties(configLocation);
+
+		String directory = args.length > 0 ? args[0] : appProperties.getIg_install().getPackage_cache_dir();
+		if (directory == null) {
+			throw new IllegalArgumentException("No output directory given and hapi.fhir.ig_install.package_cache_dir is not set");
+		}
+		if (appProperties.getImplementationGuides() == null) {
+			ourLog.warn("No implementation guides are configured in {}", configLocation);
+			return;
+		}
+
+		PackageCacheBuilder builder = new PackageCacheBuilder(appProperties, new PackageCacheDirectory(directory));
+		for (AppProperties.ImplementationGuide guide : appProperties.getImplementationGuides().values()) {
+			builder.add(guide.getName(), guide.getVersion(), guide.getUrl());
+		}
+	}
+
+	static AppProperties loadAppProperties(String configLocation) throws IOException {
+		Resource resource = new DefaultResourceLoader().getResource(configLocation);
+		List<PropertySource<?>> propertySources = new YamlPropertySourceLoader().load("application", resource);
+		return new Binder(ConfigurationPropertySources.from(propertySources))
+			.bind("hapi.fhir", AppProperties.class)
+			.orElseGet(AppProperties::new);
+	}
+
+	public void add(String name, String version, String url) throws IOException {
+		if (packageCacheDirectory.contains(name, version)) {
+			ourLog.info("Package {}#{} is already in {}", name, version, packageCacheDirectory.getDirectory());
+			return;
+		}
+
+		String location = isNotBlank(url) ? url : appProperties.getIg_install().getRegistry_url() + "/" + name + "/" + version;
+		ourLog.info("Fetching package {}#{} from {}", name, version, location);
+		byte[] contents;
+		try (InputStream inputStream = resourceLoader.getResource(location).getInputStream()) {
+			contents = IOUtils.toByteArray(inputStream);
+		}
+		packageCacheDirectory.store(name, version, contents);
+
+		if (!appProperties.getInstall_transitive_ig_dependencies()) {
+			return;
+		}
+
+		NpmPackage npmPackage = NpmPackage.fromPackage(new ByteArrayInputStream(contents));
+		for (String dependency : npmPackage.dependencies()) {
+			String dependencyName = dependency.substring(0, dependency.indexOf('#'));
+			String dependencyVersion = dependency.substring(dependency.indexOf('#') + 1);
+			if (!ImplementationGuideInstaller.CORE_PACKAGES.contains(dependencyName)) {
+				add(dependencyName, dependencyVersion, null);
+			}
+		}
+	}
+}
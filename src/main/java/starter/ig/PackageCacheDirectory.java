@@ -0,0 +1,51 @@
+package starter.ig;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * A directory of pre-fetched NPM packages, stored as <code>&lt;name&gt;#&lt;version&gt;.tgz</code>. It is
+ * populated by {@link PackageCacheBuilder} and lets the server install its implementation guides without any
+ * network access.
+ */
+public class PackageCacheDirectory {
+
+	private final File directory;
+
+	public PackageCacheDirectory(String directory) {
+		this.directory = new File(directory);
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * @return The package contents, or <code>null</code> if the package is not in this directory
+	 */
+	public byte[] load(String name, String version) throws IOException {
+		File file = fileFor(name, version);
+		if (!file.isFile()) {
+			return null;
+		}
+		return Files.readAllBytes(file.toPath());
+	}
+
+	public boolean contains(String name, String version) {
+		return fileFor(name, version).isFile();
+	}
+
+	public void store(String name, String version, byte[] contents) throws IOException {
+		Files.createDirectories(directory.toPath());
+		// Write to a temporary file first so that a concurrently starting server never sees a partial package
+		File tempFile = File.createTempFile(name, ".tmp", directory);
+		Files.write(tempFile.toPath(), contents);
+		Files.move(tempFile.toPath(), fileFor(name, version).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private File fileFor(String name, String version) {
+		return new File(directory, name + "#" + version + ".tgz");
+	}
+}
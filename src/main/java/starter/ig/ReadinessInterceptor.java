@@ -0,0 +1,122 @@
+package starter.ig;
+
+import ca.uhn.fhir.interceptor.api.Hook;
+import ca.uhn.fhir.interceptor.api.Interceptor;
+import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.rest.api.RequestTypeEnum;
+import ca.uhn.fhir.rest.api.RestOperationTypeEnum;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
+import ca.uhn.fhir.rest.server.exceptions.UnclassifiedServerFailureException;
+import ca.uhn.fhir.util.StopWatch;
+import com.google.common.collect.ImmutableSet;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Tracks whether the startup work that the server depends on for validation (implementation guide installation
+ * and building the repository validation rules) has completed.
+ * <p>
+ * When that work runs in the background, reads are served immediately while writes and validation requests are
+ * rejected with <code>503 Service Unavailable</code> until it completes, since they would otherwise be accepted
+ * without the profiles of the implementation guides being enforced. Extended operations invoked with anything but
+ * <code>GET</code> (which is only allowed for operations that do not change data) are rejected as well, apart from a
+ * few known read-only ones.
+ */
+@Interceptor
+public class ReadinessInterceptor {
+
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(ReadinessInterceptor.class);
+
+	private static final Set<RestOperationTypeEnum> GATED_OPERATIONS = EnumSet.of(
+		RestOperationTypeEnum.CREATE,
+		RestOperationTypeEnum.UPDATE,
+		RestOperationTypeEnum.PATCH,
+		RestOperationTypeEnum.DELETE,
+		RestOperationTypeEnum.TRANSACTION,
+		RestOperationTypeEnum.BATCH,
+		RestOperationTypeEnum.META_ADD,
+		RestOperationTypeEnum.META_DELETE,
+		RestOperationTypeEnum.VALIDATE);
+	private static final Set<RestOperationTypeEnum> EXTENDED_OPERATIONS = EnumSet.of(
+		RestOperationTypeEnum.EXTENDED_OPERATION_SERVER,
+		RestOperationTypeEnum.EXTENDED_OPERATION_TYPE,
+		RestOperationTypeEnum.EXTENDED_OPERATION_INSTANCE);
+	// Operations which only read, and may also be invoked with POST
+	private static final Set<String> READ_ONLY_OPERATIONS = ImmutableSet.of(
+		"$readiness", "$import-poll-status", "$meta", "$everything", "$expand", "$lookup", "$validate-code", "$subsumes", "$translate");
+
+	public enum State {
+		STARTING, READY, FAILED
+	}
+
+	private final int retryAfterSeconds;
+	private volatile State state = State.STARTING;
+
+	public ReadinessInterceptor(int retryAfterSeconds) {
+		this.retryAfterSeconds = retryAfterSeconds;
+	}
+
+	/**
+	 * Runs the startup task, either on the calling thread or on a background thread
+	 */
+	public void start(Runnable startupTask, boolean async) {
+		if (!async) {
+			startupTask.run();
+			state = State.READY;
+			return;
+		}
+
+		ExecutorService executor = Executors.newSingleThreadExecutor(new BasicThreadFactory.Builder()
+			.namingPattern("ig-install-%d")
+			.daemon(true)
+			.build());
+		executor.submit(() -> {
+			StopWatch sw = new StopWatch();
+			try {
+				startupTask.run();
+				state = State.READY;
+				ourLog.info("Background startup completed in {}, server is ready", sw);
+			} catch (RuntimeException e) {
+				state = State.FAILED;
+				ourLog.error("Background startup failed after {}, writes will be rejected", sw, e);
+			}
+		});
+		executor.shutdown();
+		ourLog.info("Implementation guide installation is running in the background, writes are rejected until it completes");
+	}
+
+	public State getState() {
+		return state;
+	}
+
+	public boolean isReady() {
+		return state == State.READY;
+	}
+
+	@Hook(Pointcut.SERVER_INCOMING_REQUEST_POST_PROCESSED)
+	public void incomingRequestPostProcessed(RequestDetails theRequestDetails) {
+		if (state == State.READY || !isGated(theRequestDetails)) {
+			return;
+		}
+
+		BaseServerResponseException exception = new UnclassifiedServerFailureException(503,
+			state == State.FAILED ? "Server startup failed, writes are disabled" : "Server is still starting, please retry later");
+		if (state == State.STARTING) {
+			exception.addResponseHeader("Retry-After", Integer.toString(retryAfterSeconds));
+		}
+		throw exception;
+	}
+
+	private static boolean isGated(RequestDetails theRequestDetails) {
+		RestOperationTypeEnum operationType = theRequestDetails.getRestOperationType();
+		if (EXTENDED_OPERATIONS.contains(operationType)) {
+			return theRequestDetails.getRequestType() != RequestTypeEnum.GET && !READ_ONLY_OPERATIONS.contains(theRequestDetails.getOperation());
+		}
+		return GATED_OPERATIONS.contains(operationType);
+	}
+}
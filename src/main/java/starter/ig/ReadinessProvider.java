@@ -0,0 +1,35 @@
+package starter.ig;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.annotation.Operation;
+import ca.uhn.fhir.rest.server.exceptions.UnclassifiedServerFailureException;
+import ca.uhn.fhir.util.ParametersUtil;
+import org.hl7.fhir.instance.model.api.IBaseParameters;
+
+/**
+ * Provides the <code>$readiness</code> operation, which returns <code>200 OK</code> once the server has completed
+ * its startup work and <code>503 Service Unavailable</code> before that. This is intended to be used as a readiness
+ * probe.
+ */
+public class ReadinessProvider {
+
+	private final FhirContext fhirContext;
+	private final ReadinessInterceptor readinessInterceptor;
+
+	public ReadinessProvider(FhirContext fhirContext, ReadinessInterceptor readinessInterceptor) {
+		this.fhirContext = fhirContext;
+		this.readinessInterceptor = readinessInterceptor;
+	}
+
+	@Operation(name = "$readiness", idempotent = true)
+	public IBaseParameters readiness() {
+		ReadinessInterceptor.State state = readinessInterceptor.getState();
+		if (state != ReadinessInterceptor.State.READY) {
+			throw new UnclassifiedServerFailureException(503, "Server is not ready: " + state);
+		}
+
+		IBaseParameters retVal = ParametersUtil.newInstance(fhirContext);
+		ParametersUtil.addParameterToParametersCode(fhirContext, retVal, "status", state.name().toLowerCase());
+		return retVal;
+	}
+}
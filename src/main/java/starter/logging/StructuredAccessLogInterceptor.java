@@ -0,0 +1,263 @@
+package starter.logging;
+
+import ca.uhn.fhir.interceptor.api.Hook;
+import ca.uhn.fhir.interceptor.api.Interceptor;
+import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.rest.server.RestfulServerUtils;
+import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
+import ca.uhn.fhir.rest.server.servlet.ServletRequestDetails;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Writes one JSON line per request to the access log, as an alternative to the
+ * {@link ca.uhn.fhir.rest.server.interceptor.LoggingInterceptor}.
+ * <p>
+ * The <code>${variable}</code> placeholders of the configured format are compiled once into a list of fields (repeated
+ * placeholders are only written once). On the request thread only the field values are captured and offered to a
+ * bounded ring buffer; a single background thread turns them into JSON and writes them to the logger. When the buffer is
+ * full the event is dropped and counted instead of blocking the request. The thread is started by {@link #start()}, and
+ * {@link #shutdown()} stops it and writes out the events still queued.
+ */
+@Interceptor
+public class StructuredAccessLogInterceptor {
+
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(StructuredAccessLogInterceptor.class);
+
+	private static final Pattern VARIABLE = Pattern.compile("\\$\\{([^}]+)}");
+
+	private final org.slf4j.Logger accessLog;
+	private final String[] names;
+	private final Field[] fields;
+	private final BlockingQueue<String[]> queue;
+	private final AtomicLong droppedCount = new AtomicLong();
+	private Thread drainThread;
+
+	public StructuredAccessLogInterceptor(String loggerName, String format, int queueSize) {
+		this.accessLog = org.slf4j.LoggerFactory.getLogger(loggerName);
+		this.queue = new ArrayBlockingQueue<>(Math.max(1, queueSize));
+
+		Set<String> variables = new LinkedHashSet<>();
+		Matcher matcher = VARIABLE.matcher(format);
+		while (matcher.find()) {
+			variables.add(matcher.group(1));
+		}
+		List<String> names = new ArrayList<>();
+		names.add("timestamp");
+		names.add("status");
+		names.add("processingTimeMillis");
+		names.addAll(variables);
+		names.add("exceptionMessage");
+		this.names = names.toArray(new String[0]);
+		this.fields = new Field[this.names.length];
+		for (int i = 0; i < this.names.length; i++) {
+			this.fields[i] = compile(this.names[i]);
+		}
+	}
+
+	public synchronized void start() {
+		if (drainThread == null) {
+			drainThread = new BasicThreadFactory.Builder().namingPattern("access-log-%d").daemon(true).build().newThread(this::drain);
+			drainThread.start();
+		}
+	}
+
+	public synchronized void shutdown() {
+		if (drainThread != null) {
+			drainThread.interrupt();
+			try {
+				drainThread.join(TimeUnit.SECONDS.toMillis(5));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			drainThread = null;
+		}
+		List<String[]> remaining = new ArrayList<>();
+		queue.drainTo(remaining);
+		StringBuilder line = new StringBuilder(512);
+		for (String[] values : remaining) {
+			write(line, values);
+		}
+	}
+
+	@Hook(Pointcut.SERVER_PROCESSING_COMPLETED_NORMALLY)
+	public void processingCompletedNormally(ServletRequestDetails theRequestDetails) {
+		offer(capture(theRequestDetails, null));
+	}
+
+	@Hook(Pointcut.SERVER_HANDLE_EXCEPTION)
+	public boolean handleException(ServletRequestDetails theRequestDetails, BaseServerResponseException theException) {
+		offer(capture(theRequestDetails, theException));
+		return true;
+	}
+
+	public long getDroppedCount() {
+		return droppedCount.get();
+	}
+
+	private String[] capture(ServletRequestDetails theRequestDetails, BaseServerResponseException theException) {
+		String[] retVal = new String[fields.length];
+		for (int i = 0; i < fields.length; i++) {
+			retVal[i] = fields[i].resolve(theRequestDetails, theException);
+		}
+		return retVal;
+	}
+
+	private void offer(String[] theValues) {
+		if (!queue.offer(theValues)) {
+			droppedCount.incrementAndGet();
+		}
+	}
+
+	private void drain() {
+		StringBuilder line = new StringBuilder(512);
+		long reportedDropped = 0;
+		while (!Thread.currentThread().isInterrupted()) {
+			String[] values;
+			try {
+				values = queue.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+
+			write(line, values);
+
+			long dropped = droppedCount.get();
+			if (dropped != reportedDropped) {
+				ourLog.warn("Dropped {} access log event(s) because the access log could not keep up", dropped - reportedDropped);
+				reportedDropped = dropped;
+			}
+		}
+	}
+
+	private void write(StringBuilder theLine, String[] theValues) {
+		theLine.setLength(0);
+		theLine.append('{');
+		boolean first = true;
+		for (int i = 0; i < names.length; i++) {
+			if (theValues[i] == null) {
+				continue;
+			}
+			if (!first) {
+				theLine.append(',');
+			}
+			first = false;
+			appendString(theLine, names[i]);
+			theLine.append(':');
+			appendString(theLine, theValues[i]);
+		}
+		theLine.append('}');
+		accessLog.info(theLine.toString());
+	}
+
+	private static void appendString(StringBuilder theBuilder, String theValue) {
+		theBuilder.append('"');
+		for (int i = 0; i < theValue.length(); i++) {
+			char c = theValue.charAt(i);
+			switch (c) {
+				case '"':
+					theBuilder.append("\\\"");
+					break;
+				case '\\':
+					theBuilder.append("\\\\");
+					break;
+				case '\n':
+					theBuilder.append("\\n");
+					break;
+				case '\r':
+					theBuilder.append("\\r");
+					break;
+				case '\t':
+					theBuilder.append("\\t");
+					break;
+				default:
+					if (c < 0x20) {
+						theBuilder.append(String.format("\\u%04x", (int) c));
+					} else {
+						theBuilder.append(c);
+					}
+			}
+		}
+		theBuilder.append('"');
+	}
+
+	private static Field compile(String theName) {
+		if (theName.startsWith("requestHeader.")) {
+			String header = theName.substring("requestHeader.".length());
+			return (r, e) -> r.getHeader(header);
+		}
+		switch (theName) {
+			case "timestamp":
+				return (r, e) -> Instant.now().toString();
+			case "status":
+				return (r, e) -> e != null ? Integer.toString(e.getStatusCode()) : Integer.toString(r.getServletResponse().getStatus());
+			case "processingTimeMillis":
+				return (r, e) -> Long.toString(r.getRequestStopwatch().getMillis());
+			case "exceptionMessage":
+				return (r, e) -> e != null ? e.getMessage() : null;
+			case "requestVerb":
+				return (r, e) -> r.getRequestType() != null ? r.getRequestType().name() : null;
+			case "requestUrl":
+				return (r, e) -> r.getCompleteUrl();
+			case "servletPath":
+				return (r, e) -> r.getServletRequest().getServletPath();
+			case "remoteAddr":
+				return (r, e) -> r.getServletRequest().getRemoteAddr();
+			case "requestId":
+				return (r, e) -> r.getRequestId();
+			case "requestContentType":
+				return (r, e) -> r.getServletRequest().getContentType();
+			case "operationType":
+				return (r, e) -> r.getRestOperationType() != null ? r.getRestOperationType().getCode() : null;
+			case "operationName":
+				return (r, e) -> r.getOperation();
+			case "id":
+				return (r, e) -> r.getId() != null ? r.getId().getValue() : null;
+			case "idOrResourceName":
+				return (r, e) -> r.getId() != null && r.getId().hasIdPart() ? r.getId().getValue() : r.getResourceName();
+			case "requestParameters":
+				return (r, e) -> formatParameters(r.getParameters());
+			case "responseEncodingNoDefault":
+				return (r, e) -> {
+					RestfulServerUtils.ResponseEncoding encoding = RestfulServerUtils.determineResponseEncodingNoDefault(r, null);
+					return encoding != null ? encoding.getEncoding().name() : null;
+				};
+			default:
+				return (r, e) -> "!VAL!";
+		}
+	}
+
+	private static String formatParameters(Map<String, String[]> theParameters) {
+		if (theParameters == null || theParameters.isEmpty()) {
+			return null;
+		}
+		StringBuilder retVal = new StringBuilder();
+		for (Map.Entry<String, String[]> entry : theParameters.entrySet()) {
+			for (String value : entry.getValue()) {
+				if (retVal.length() > 0) {
+					retVal.append('&');
+				}
+				retVal.append(entry.getKey()).append('=').append(value);
+			}
+		}
+		return retVal.toString();
+	}
+
+	@FunctionalInterface
+	private interface Field {
+		String resolve(ServletRequestDetails theRequestDetails, BaseServerResponseException theException);
+	}
+}
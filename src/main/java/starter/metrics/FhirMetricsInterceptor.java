@@ -0,0 +1,161 @@
+package starter.metrics;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.interceptor.api.Hook;
+import ca.uhn.fhir.interceptor.api.Interceptor;
+import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.rest.api.RestOperationTypeEnum;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
+import ca.uhn.fhir.rest.server.servlet.ServletRequestDetails;
+import ca.uhn.fhir.util.BundleUtil;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.hl7.fhir.instance.model.api.IBaseBundle;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records Micrometer metrics for every request handled by the FHIR servlet: a latency histogram, request and
+ * response payload sizes, the number of resources returned and the number of failed requests. All meters are tagged
+ * with the HTTP method, the resource type and the FHIR operation, so that hot paths can be found from the metrics
+ * alone. Resource types and operations the server does not know are tagged as <code>unknown</code>, so that clients
+ * cannot create meters with arbitrary paths.
+ */
+@Interceptor
+public class FhirMetricsInterceptor {
+
+	private static final String RESPONSE_WRITER_KEY = FhirMetricsInterceptor.class.getName() + "_RESPONSE_WRITER";
+	private static final String STATUS_KEY = FhirMetricsInterceptor.class.getName() + "_STATUS";
+	private static final String UNKNOWN = "unknown";
+	private static final Set<RestOperationTypeEnum> EXTENDED_OPERATIONS = EnumSet.of(
+		RestOperationTypeEnum.EXTENDED_OPERATION_SERVER,
+		RestOperationTypeEnum.EXTENDED_OPERATION_TYPE,
+		RestOperationTypeEnum.EXTENDED_OPERATION_INSTANCE);
+
+	private final FhirContext fhirContext;
+	private final MeterRegistry meterRegistry;
+	private final Set<String> resourceTypes;
+
+	public FhirMetricsInterceptor(FhirContext fhirContext, MeterRegistry meterRegistry) {
+		this.fhirContext = fhirContext;
+		this.meterRegistry = meterRegistry;
+		this.resourceTypes = fhirContext.getResourceTypes();
+	}
+
+	@Hook(Pointcut.SERVER_OUTGOING_WRITER_CREATED)
+	public Writer outgoingWriterCreated(Writer theWriter, RequestDetails theRequestDetails) {
+		CountingWriter retVal = new CountingWriter(theWriter);
+		theRequestDetails.getUserData().put(RESPONSE_WRITER_KEY, retVal);
+		return retVal;
+	}
+
+	@Hook(Pointcut.SERVER_OUTGOING_RESPONSE)
+	public boolean outgoingResponse(RequestDetails theRequestDetails, IBaseResource theResponseObject) {
+		if (theResponseObject != null) {
+			int count = theResponseObject instanceof IBaseBundle ? BundleUtil.toListOfEntries(fhirContext, (IBaseBundle) theResponseObject).size() : 1;
+			DistributionSummary.builder("fhir.server.results")
+				.description("Number of resources returned per request")
+				.tags(tags(theRequestDetails))
+				.register(meterRegistry)
+				.record(count);
+		}
+		return true;
+	}
+
+	@Hook(Pointcut.SERVER_HANDLE_EXCEPTION)
+	public boolean handleException(RequestDetails theRequestDetails, BaseServerResponseException theException) {
+		theRequestDetails.getUserData().put(STATUS_KEY, theException.getStatusCode());
+		return true;
+	}
+
+	@Hook(Pointcut.SERVER_PROCESSING_COMPLETED)
+	public void processingCompleted(ServletRequestDetails theRequestDetails) {
+		Tags tags = tags(theRequestDetails);
+
+		Timer.builder("fhir.server.requests")
+			.description("FHIR request latency")
+			.tags(tags)
+			.publishPercentileHistogram()
+			.register(meterRegistry)
+			.record(theRequestDetails.getRequestStopwatch().getMillis(), TimeUnit.MILLISECONDS);
+
+		int requestSize = theRequestDetails.getServletRequest() != null ? theRequestDetails.getServletRequest().getContentLength() : -1;
+		if (requestSize >= 0) {
+			DistributionSummary.builder("fhir.server.request.size")
+				.description("FHIR request payload size")
+				.baseUnit("bytes")
+				.tags(tags)
+				.register(meterRegistry)
+				.record(requestSize);
+		}
+
+		CountingWriter writer = (CountingWriter) theRequestDetails.getUserData().get(RESPONSE_WRITER_KEY);
+		if (writer != null) {
+			DistributionSummary.builder("fhir.server.response.size")
+				.description("FHIR response payload size")
+				.baseUnit("characters")
+				.tags(tags)
+				.register(meterRegistry)
+				.record(writer.count);
+		}
+
+		Integer status = (Integer) theRequestDetails.getUserData().get(STATUS_KEY);
+		if (status != null) {
+			Counter.builder("fhir.server.errors")
+				.description("Failed FHIR requests")
+				.tags(tags.and("status", Integer.toString(status)))
+				.register(meterRegistry)
+				.increment();
+		}
+	}
+
+	private Tags tags(RequestDetails theRequestDetails) {
+		String method = theRequestDetails.getRequestType() != null ? theRequestDetails.getRequestType().name() : "UNKNOWN";
+		String resourceName = theRequestDetails.getResourceName();
+		String resource = resourceName == null ? "system" : resourceTypes.contains(resourceName) ? resourceName : UNKNOWN;
+		// The operation type is only set once the request has been matched to a method of the server
+		RestOperationTypeEnum operationType = theRequestDetails.getRestOperationType();
+		String operation = operationType != null ? operationType.getCode() : UNKNOWN;
+		if (EXTENDED_OPERATIONS.contains(operationType) && theRequestDetails.getOperation() != null && theRequestDetails.getOperation().startsWith("$")) {
+			operation = theRequestDetails.getOperation();
+		}
+		return Tags.of("method", method, "resource", resource, "operation", operation);
+	}
+
+	private static class CountingWriter extends FilterWriter {
+
+		private long count;
+
+		private CountingWriter(Writer theWriter) {
+			super(theWriter);
+		}
+
+		@Override
+		public void write(int c) throws IOException {
+			super.write(c);
+			count++;
+		}
+
+		@Override
+		public void write(char[] cbuf, int off, int len) throws IOException {
+			super.write(cbuf, off, len);
+			count += len;
+		}
+
+		@Override
+		public void write(String str, int off, int len) throws IOException {
+			super.write(str, off, len);
+			count += len;
+		}
+	}
+}
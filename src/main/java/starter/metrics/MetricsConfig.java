@@ -0,0 +1,49 @@
+package starter.metrics;
+
+import io.micrometer.core.instrument.binder.jvm.JvmGcMetrics;
+import io.micrometer.core.instrument.binder.jvm.JvmMemoryMetrics;
+import io.micrometer.core.instrument.binder.jvm.JvmThreadMetrics;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.ServletRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import starter.AppProperties;
+
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * Creates the Prometheus meter registry used by {@link FhirMetricsInterceptor} and exposes it on its own servlet,
+ * since the tester overlay is mapped to <code>/*</code>.
+ * <p>
+ * The <code>metrics.enabled</code> property must be enabled in <code>application.yaml</code> in order to use this class.
+ */
+@ConditionalOnProperty(prefix = "hapi.fhir.metrics", name = "enabled", havingValue = "true")
+@Configuration
+public class MetricsConfig {
+
+	@Bean
+	public PrometheusMeterRegistry prometheusMeterRegistry() {
+		PrometheusMeterRegistry retVal = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+		new JvmMemoryMetrics().bindTo(retVal);
+		new JvmGcMetrics().bindTo(retVal);
+		new JvmThreadMetrics().bindTo(retVal);
+		return retVal;
+	}
+
+	@Bean
+	@ConditionalOnProperty(prefix = "hapi.fhir.second_level_cache", name = "enabled", havingValue = "true")
+	public SecondLevelCacheMetrics secondLevelCacheMetrics(PrometheusMeterRegistry prometheusMeterRegistry, AppProperties appProperties, EntityManagerFactory entityManagerFactory) {
+		SecondLevelCacheMetrics retVal = new SecondLevelCacheMetrics(entityManagerFactory, appProperties.getSecond_level_cache().getEntities());
+		retVal.bindTo(prometheusMeterRegistry);
+		return retVal;
+	}
+
+	@Bean
+	public ServletRegistrationBean<PrometheusScrapeServlet> prometheusScrapeServletRegistration(PrometheusMeterRegistry prometheusMeterRegistry, AppProperties appProperties) {
+		ServletRegistrationBean<PrometheusScrapeServlet> retVal = new ServletRegistrationBean<>(new PrometheusScrapeServlet(prometheusMeterRegistry));
+		retVal.addUrlMappings(appProperties.getMetrics().getScrape_path());
+		return retVal;
+	}
+}
@@ -0,0 +1,28 @@
+package starter.metrics;
+
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import io.prometheus.client.exporter.common.TextFormat;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Serves the contents of a {@link PrometheusMeterRegistry} in the Prometheus text exposition format.
+ */
+public class PrometheusScrapeServlet extends HttpServlet {
+
+	private final PrometheusMeterRegistry meterRegistry;
+
+	public PrometheusScrapeServlet(PrometheusMeterRegistry meterRegistry) {
+		this.meterRegistry = meterRegistry;
+	}
+
+	@Override
+	protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+		resp.setStatus(HttpServletResponse.SC_OK);
+		resp.setContentType(TextFormat.CONTENT_TYPE_004);
+		resp.getWriter().write(meterRegistry.scrape());
+	}
+}
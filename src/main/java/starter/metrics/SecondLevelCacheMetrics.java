@@ -0,0 +1,53 @@
+package starter.metrics;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+/**
+ * Hit, miss and put counts of the Hibernate second-level cache regions, see
+ * {@link starter.cache.SecondLevelCacheConfigurer}.
+ */
+public class SecondLevelCacheMetrics implements MeterBinder {
+
+	private final Statistics statistics;
+	private final List<String> regions;
+
+	public SecondLevelCacheMetrics(EntityManagerFactory entityManagerFactory, List<String> regions) {
+		this.statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		this.regions = regions;
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		for (String region : regions) {
+			counter(registry, "hibernate.second.level.cache.hits", region, CacheRegionStatistics::getHitCount);
+			counter(registry, "hibernate.second.level.cache.misses", region, CacheRegionStatistics::getMissCount);
+			counter(registry, "hibernate.second.level.cache.puts", region, CacheRegionStatistics::getPutCount);
+		}
+	}
+
+	private void counter(MeterRegistry registry, String name, String region, ToLongFunction<CacheRegionStatistics> value) {
+		FunctionCounter.builder(name, statistics, s -> {
+				CacheRegionStatistics regionStatistics = regionStatistics(s, region);
+				return regionStatistics != null ? value.applyAsLong(regionStatistics) : Double.NaN;
+			})
+			.tag("region", region)
+			.register(registry);
+	}
+
+	private static CacheRegionStatistics regionStatistics(Statistics statistics, String region) {
+		try {
+			return statistics.getDomainDataRegionStatistics(region);
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,172 @@
+package starter.narrative;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.interceptor.api.Hook;
+import ca.uhn.fhir.interceptor.api.Interceptor;
+import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.narrative.INarrativeGenerator;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.instance.model.api.IDomainResource;
+import org.hl7.fhir.instance.model.api.IIdType;
+import org.hl7.fhir.instance.model.api.INarrative;
+
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.apache.commons.lang3.StringUtils.isBlank;
+
+/**
+ * An {@link INarrativeGenerator} that only generates narratives for the configured resource types, and remembers the
+ * narrative generated for a resource version so that reading the same version again does not render the templates
+ * again.
+ * <p>
+ * The parser only asks for a narrative when the resource has none, so narratives can also be generated once when the
+ * resource is written (see {@link #getStorageInterceptor()}), after which reads never render them at all.
+ */
+public class CachingNarrativeGenerator implements INarrativeGenerator {
+
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(CachingNarrativeGenerator.class);
+
+	private static final String STATUS_GENERATED = "generated";
+	private static final int ENTRY_OVERHEAD_BYTES = 128;
+
+	private final FhirContext fhirContext;
+	private final INarrativeGenerator delegate;
+	private final Set<String> resourceTypes;
+	private final Cache<String, CachedNarrative> cache;
+	private final StorageInterceptor storageInterceptor = new StorageInterceptor();
+
+	/**
+	 * @param resourceTypes The resource types to generate narratives for, all types if empty
+	 */
+	public CachingNarrativeGenerator(FhirContext fhirContext, INarrativeGenerator delegate, List<String> resourceTypes, long maximumBytes) {
+		this.fhirContext = fhirContext;
+		this.delegate = delegate;
+		this.resourceTypes = new HashSet<>(resourceTypes);
+		this.cache = CacheBuilder.newBuilder()
+			.maximumWeight(maximumBytes)
+			.weigher((String key, CachedNarrative value) -> ENTRY_OVERHEAD_BYTES + (key.length() + value.div.length()) * 2)
+			.recordStats()
+			.build();
+	}
+
+	@Override
+	public boolean populateResourceNarrative(FhirContext theFhirContext, IBaseResource theResource) {
+		if (!isEnabled(theFhirContext.getResourceType(theResource))) {
+			return false;
+		}
+		String key = key(theFhirContext, theResource);
+		if (key == null) {
+			return delegate.populateResourceNarrative(theFhirContext, theResource);
+		}
+
+		INarrative text = ((IDomainResource) theResource).getText();
+		try {
+			CachedNarrative cached = cache.getIfPresent(key);
+			if (cached != null) {
+				text.setDivAsString(cached.div);
+				text.setStatusAsString(cached.status);
+				return true;
+			}
+			boolean retVal = delegate.populateResourceNarrative(theFhirContext, theResource);
+			if (retVal && !text.isEmpty()) {
+				cache.put(key, new CachedNarrative(text.getDivAsString(), text.getStatusAsString()));
+			}
+			return retVal;
+		} catch (Exception e) {
+			ourLog.warn("Failed to populate the narrative of {}", theResource.getIdElement().getValue(), e);
+			return false;
+		}
+	}
+
+	private boolean isEnabled(String theResourceType) {
+		return resourceTypes.isEmpty() || resourceTypes.contains(theResourceType);
+	}
+
+	/**
+	 * @return The cache key of the resource version, or <code>null</code> if the resource is not a stored version
+	 */
+	private static String key(FhirContext theFhirContext, IBaseResource theResource) {
+		IIdType id = theResource.getIdElement();
+		if (!(theResource instanceof IDomainResource) || id == null || !id.hasIdPart() || !id.hasVersionIdPart()) {
+			return null;
+		}
+		// Version ids restart after an expunge, the update time does not
+		Date lastUpdated = theResource.getMeta() != null ? theResource.getMeta().getLastUpdated() : null;
+		return theFhirContext.getResourceType(theResource) + '/' + id.getIdPart() + "/_history/" + id.getVersionIdPart() + '@' + (lastUpdated != null ? lastUpdated.getTime() : 0);
+	}
+
+	public long getHitCount() {
+		return cache.stats().hitCount();
+	}
+
+	public long getMissCount() {
+		return cache.stats().missCount();
+	}
+
+	/**
+	 * Stores a generated narrative with resources as they are written. A narrative is generated if the resource has
+	 * none, or if an update sends back the generated narrative of the previous version unchanged, which would no
+	 * longer match the updated content.
+	 */
+	public StorageInterceptor getStorageInterceptor() {
+		return storageInterceptor;
+	}
+
+	@Interceptor
+	public class StorageInterceptor {
+
+		@Hook(Pointcut.STORAGE_PRESTORAGE_RESOURCE_CREATED)
+		public void resourcePreCreate(IBaseResource theResource) {
+			generateOnWrite(theResource, null);
+		}
+
+		@Hook(Pointcut.STORAGE_PRESTORAGE_RESOURCE_UPDATED)
+		public void resourcePreUpdate(IBaseResource theOldResource, IBaseResource theNewResource) {
+			generateOnWrite(theNewResource, theOldResource);
+		}
+	}
+
+	private void generateOnWrite(IBaseResource theResource, IBaseResource thePreviousResource) {
+		if (!(theResource instanceof IDomainResource) || !isEnabled(fhirContext.getResourceType(theResource))) {
+			return;
+		}
+
+		INarrative text = ((IDomainResource) theResource).getText();
+		try {
+			String div = text.isEmpty() ? null : text.getDivAsString();
+			String status = text.getStatusAsString();
+			if (!isBlank(div)) {
+				INarrative previousText = thePreviousResource instanceof IDomainResource ? ((IDomainResource) thePreviousResource).getText() : null;
+				boolean unchangedGenerated = STATUS_GENERATED.equals(status) && previousText != null && !previousText.isEmpty() && div.equals(previousText.getDivAsString());
+				if (!unchangedGenerated) {
+					return;
+				}
+			}
+
+			// Cleared first so that an outdated narrative is never kept, restored if there is no template for the resource
+			text.setDivAsString(null);
+			text.setStatusAsString(null);
+			if (!delegate.populateResourceNarrative(fhirContext, theResource) && div != null) {
+				text.setDivAsString(div);
+				text.setStatusAsString(status);
+			}
+		} catch (Exception e) {
+			ourLog.warn("Failed to generate the narrative of {} on write", theResource.getIdElement().getValue(), e);
+		}
+	}
+
+	private static class CachedNarrative {
+		private final String div;
+		private final String status;
+
+		private CachedNarrative(String div, String status) {
+			this.div = div;
+			this.status = status;
+		}
+	}
+}
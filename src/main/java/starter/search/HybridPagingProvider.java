@@ -0,0 +1,135 @@
+package starter.search;
+
+import ca.uhn.fhir.interceptor.api.Hook;
+import ca.uhn.fhir.interceptor.api.Interceptor;
+import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.jpa.api.dao.DaoRegistry;
+import ca.uhn.fhir.jpa.search.DatabaseBackedPagingProvider;
+import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
+import ca.uhn.fhir.rest.api.RestOperationTypeEnum;
+import ca.uhn.fhir.rest.api.server.IBundleProvider;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.server.IRestfulServerDefaults;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.apache.commons.lang3.SerializationUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.apache.commons.lang3.StringUtils.isBlank;
+
+/**
+ * A paging provider that keeps searches with few results out of the database search cache.
+ * <p>
+ * Before a new search is registered, the matching resource ids are counted up to the threshold, or up to the page
+ * size of the request if that is smaller (see {@link #getStorageInterceptor()}). If there are no more than that, the
+ * search runs synchronously, which skips storing the search and its results and handing it over to the search
+ * coordinator. Larger searches are paged through the database as before, at the cost of the limited count.
+ * <p>
+ * As searches only run synchronously when their results fit in one page, they have no further pages, and any server
+ * of a cluster can follow the next links of the searches paged through the database. Only searches without a result
+ * list id (such as those of the everything operations) are kept in memory, and are only known to the server that ran
+ * them.
+ */
+public class HybridPagingProvider extends DatabaseBackedPagingProvider {
+
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(HybridPagingProvider.class);
+
+	private static final String IN_MEMORY_SEARCH = HybridPagingProvider.class.getName() + "_IN_MEMORY_SEARCH";
+
+	@Autowired
+	private DaoRegistry myDaoRegistry;
+
+	private final int inMemoryThreshold;
+	private final Cache<String, IBundleProvider> inMemoryResults;
+	private final StorageInterceptor storageInterceptor = new StorageInterceptor();
+	private final AtomicLong inMemorySearchCount = new AtomicLong();
+	private final AtomicLong persistedSearchCount = new AtomicLong();
+
+	/**
+	 * @param inMemoryThreshold The largest number of results of a search that is not stored in the database, which is
+	 *                          capped at the page size of the request
+	 */
+	public HybridPagingProvider(int inMemoryThreshold, int maximumInMemorySearches, int retainInMemoryMinutes) {
+		this.inMemoryThreshold = inMemoryThreshold;
+		this.inMemoryResults = CacheBuilder.newBuilder()
+			.maximumSize(maximumInMemorySearches)
+			.expireAfterAccess(retainInMemoryMinutes, TimeUnit.MINUTES)
+			.build();
+	}
+
+	@Override
+	public String storeResultList(RequestDetails theRequestDetails, IBundleProvider theList) {
+		if (isBlank(theList.getUuid()) || (theRequestDetails != null && theRequestDetails.getUserData().containsKey(IN_MEMORY_SEARCH))) {
+			String retVal = UUID.randomUUID().toString();
+			inMemoryResults.put(retVal, theList);
+			return retVal;
+		}
+		return super.storeResultList(theRequestDetails, theList);
+	}
+
+	@Override
+	public IBundleProvider retrieveResultList(RequestDetails theRequestDetails, String theId) {
+		IBundleProvider retVal = inMemoryResults.getIfPresent(theId);
+		return retVal != null ? retVal : super.retrieveResultList(theRequestDetails, theId);
+	}
+
+	public long getInMemorySearchCount() {
+		return inMemorySearchCount.get();
+	}
+
+	public long getPersistedSearchCount() {
+		return persistedSearchCount.get();
+	}
+
+	/**
+	 * Decides whether a new search runs synchronously, registered with the JPA interceptor service
+	 */
+	public StorageInterceptor getStorageInterceptor() {
+		return storageInterceptor;
+	}
+
+	@Interceptor
+	public class StorageInterceptor {
+
+		@Hook(Pointcut.STORAGE_PRESEARCH_REGISTERED)
+		public void presearchRegistered(RequestDetails theRequestDetails, SearchParameterMap theParams) {
+			// Searches that are already synchronous, operations such as $everything and internal searches are left alone
+			if (theRequestDetails == null || theRequestDetails.getRestOperationType() != RestOperationTypeEnum.SEARCH_TYPE
+				|| theParams.isLoadSynchronous() || theParams.getLoadSynchronousUpTo() != null || theParams.getOffset() != null) {
+				return;
+			}
+
+			// A search with more results than fit in one page would need its further pages kept on this server
+			int threshold = Math.min(inMemoryThreshold, pageSize(theRequestDetails, theParams));
+			try {
+				SearchParameterMap probe = SerializationUtils.clone(theParams);
+				probe.setLoadSynchronousUpTo(threshold + 1);
+				int count = myDaoRegistry.getResourceDao(theRequestDetails.getResourceName()).searchForIds(probe, theRequestDetails).size();
+				if (count > threshold) {
+					persistedSearchCount.incrementAndGet();
+					return;
+				}
+			} catch (RuntimeException e) {
+				// The search itself reports any problem with its parameters
+				ourLog.debug("Failed to count the results of a {} search, it is paged through the database", theRequestDetails.getResourceName(), e);
+				persistedSearchCount.incrementAndGet();
+				return;
+			}
+
+			theParams.setLoadSynchronous(true);
+			theRequestDetails.getUserData().put(IN_MEMORY_SEARCH, Boolean.TRUE);
+			inMemorySearchCount.incrementAndGet();
+		}
+
+		private int pageSize(RequestDetails theRequestDetails, SearchParameterMap theParams) {
+			IRestfulServerDefaults server = theRequestDetails.getServer();
+			int defaultPageSize = server != null && server.getDefaultPageSize() != null ? server.getDefaultPageSize() : getDefaultPageSize();
+			int maximumPageSize = server != null && server.getMaximumPageSize() != null ? server.getMaximumPageSize() : getMaximumPageSize();
+			return Math.min(theParams.getCount() != null ? theParams.getCount() : defaultPageSize, maximumPageSize);
+		}
+	}
+}
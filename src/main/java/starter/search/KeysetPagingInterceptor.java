@@ -0,0 +1,245 @@
+package starter.search;
+
+import ca.uhn.fhir.context.BaseRuntimeChildDefinition;
+import ca.uhn.fhir.context.BaseRuntimeElementCompositeDefinition;
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.interceptor.api.Hook;
+import ca.uhn.fhir.interceptor.api.Interceptor;
+import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.model.primitive.InstantDt;
+import ca.uhn.fhir.model.valueset.BundleEntrySearchModeEnum;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.RestOperationTypeEnum;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.api.server.ResponseDetails;
+import ca.uhn.fhir.rest.server.IPagingProvider;
+import ca.uhn.fhir.rest.server.IRestfulServerDefaults;
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import ca.uhn.fhir.util.BundleUtil;
+import ca.uhn.fhir.util.FhirTerser;
+import ca.uhn.fhir.util.UrlUtil;
+import ca.uhn.fhir.util.bundle.SearchBundleEntryParts;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.hl7.fhir.instance.model.api.IBase;
+import org.hl7.fhir.instance.model.api.IBaseBundle;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.apache.commons.lang3.StringUtils.isBlank;
+import static starter.search.SearchRequests.single;
+
+/**
+ * Pages type searches sorted by <code>_lastUpdated</code> with a cursor instead of through the database search cache.
+ * <p>
+ * Each page is a synchronous query for the resources from the last update time seen so far, ordered by update time
+ * and then by resource id so that the order of resources updated at the same time is stable. The <code>next</code>
+ * link carries that time and the number of resources with that time already returned as an opaque
+ * <code>_cursor</code> parameter, so fetching a page costs the same whatever its position, rather than the whole
+ * result set being loaded into the search cache first.
+ * <p>
+ * Cursor pages can only be followed forwards, so they have no <code>previous</code> or <code>last</code> links.
+ * Searches with an explicit <code>_offset</code> are left alone.
+ */
+@Interceptor
+public class KeysetPagingInterceptor {
+
+	public static final String PARAM_CURSOR = "_cursor";
+
+	private static final String KEYSET_PAGE = KeysetPagingInterceptor.class.getName() + "_KEYSET_PAGE";
+	private static final String SORT_ASCENDING = Constants.PARAM_LASTUPDATED;
+	private static final String SORT_DESCENDING = "-" + Constants.PARAM_LASTUPDATED;
+
+	private final FhirContext fhirContext;
+
+	public KeysetPagingInterceptor(FhirContext fhirContext) {
+		this.fhirContext = fhirContext;
+	}
+
+	@Hook(Pointcut.SERVER_INCOMING_REQUEST_POST_PROCESSED)
+	public void incomingRequestPostProcessed(RequestDetails theRequestDetails) {
+		if (theRequestDetails.getRestOperationType() != RestOperationTypeEnum.SEARCH_TYPE) {
+			return;
+		}
+		Map<String, String[]> parameters = theRequestDetails.getParameters();
+		Boolean descending = sortDirection(parameters.get(Constants.PARAM_SORT));
+		String count = single(parameters.get(Constants.PARAM_COUNT));
+		if (descending == null || parameters.containsKey(Constants.PARAM_OFFSET) || "0".equals(count)) {
+			if (parameters.containsKey(PARAM_CURSOR)) {
+				throw new InvalidRequestException(PARAM_CURSOR + " can only be used with _sort=" + SORT_ASCENDING + " or _sort=" + SORT_DESCENDING + " and without _offset");
+			}
+			return;
+		}
+
+		Cursor cursor = Cursor.parse(single(parameters.get(PARAM_CURSOR)));
+		KeysetPage page = new KeysetPage(new LinkedHashMap<>(parameters), cursor);
+		theRequestDetails.getUserData().put(KEYSET_PAGE, page);
+
+		// Offset queries are run synchronously and limited to the page
+		theRequestDetails.removeParameter(PARAM_CURSOR);
+		theRequestDetails.removeParameter(Constants.PARAM_SORT);
+		theRequestDetails.addParameter(Constants.PARAM_SORT, new String[]{descending ? SORT_DESCENDING + ",-_id" : SORT_ASCENDING + ",_id"});
+		theRequestDetails.addParameter(Constants.PARAM_OFFSET, new String[]{Integer.toString(cursor != null ? cursor.seenAtTime : 0)});
+		page.count = pageSize(theRequestDetails.getServer(), count);
+		theRequestDetails.removeParameter(Constants.PARAM_COUNT);
+		theRequestDetails.addParameter(Constants.PARAM_COUNT, new String[]{Integer.toString(page.count)});
+		if (cursor != null) {
+			String[] lastUpdated = parameters.get(Constants.PARAM_LASTUPDATED);
+			String bound = (descending ? "le" : "ge") + new InstantDt(new Date(cursor.time)).getValueAsString();
+			String[] values = lastUpdated != null ? Arrays.copyOf(lastUpdated, lastUpdated.length + 1) : new String[1];
+			values[values.length - 1] = bound;
+			theRequestDetails.removeParameter(Constants.PARAM_LASTUPDATED);
+			theRequestDetails.addParameter(Constants.PARAM_LASTUPDATED, values);
+		}
+	}
+
+	@Hook(Pointcut.SERVER_OUTGOING_RESPONSE)
+	public void outgoingResponse(RequestDetails theRequestDetails, ResponseDetails theResponseDetails) {
+		KeysetPage page = (KeysetPage) theRequestDetails.getUserData().get(KEYSET_PAGE);
+		if (page == null || !(theResponseDetails.getResponseResource() instanceof IBaseBundle)) {
+			return;
+		}
+		IBaseBundle bundle = (IBaseBundle) theResponseDetails.getResponseResource();
+
+		int matches = 0;
+		Long lastTime = null;
+		int seenAtLastTime = 0;
+		for (SearchBundleEntryParts entry : BundleUtil.getSearchBundleEntryParts(fhirContext, bundle)) {
+			if (entry.getSearchMode() == BundleEntrySearchModeEnum.INCLUDE || entry.getResource() == null) {
+				continue;
+			}
+			Date lastUpdated = entry.getResource().getMeta().getLastUpdated();
+			if (lastUpdated == null) {
+				// Without the update times the cursor cannot be positioned, so leave the page as it is
+				return;
+			}
+			matches++;
+			if (lastTime != null && lastTime == lastUpdated.getTime()) {
+				seenAtLastTime++;
+			} else {
+				lastTime = lastUpdated.getTime();
+				seenAtLastTime = 1;
+			}
+		}
+		if (lastTime != null && page.cursor != null && lastTime == page.cursor.time && seenAtLastTime == matches) {
+			// The whole page was updated at the time of the previous cursor
+			seenAtLastTime += page.cursor.seenAtTime;
+		}
+
+		String nextUrl = matches >= page.count && lastTime != null ? nextUrl(theRequestDetails, page, new Cursor(lastTime, seenAtLastTime)) : null;
+		setLinks(bundle, nextUrl);
+	}
+
+	private String nextUrl(RequestDetails theRequestDetails, KeysetPage thePage, Cursor theCursor) {
+		StringBuilder retVal = new StringBuilder(theRequestDetails.getFhirServerBase()).append('/').append(theRequestDetails.getResourceName());
+		char separator = '?';
+		for (Map.Entry<String, String[]> parameter : thePage.parameters.entrySet()) {
+			if (PARAM_CURSOR.equals(parameter.getKey())) {
+				continue;
+			}
+			for (String value : parameter.getValue()) {
+				retVal.append(separator).append(UrlUtil.escapeUrlParam(parameter.getKey())).append('=').append(UrlUtil.escapeUrlParam(value));
+				separator = '&';
+			}
+		}
+		return retVal.append(separator).append(PARAM_CURSOR).append('=').append(theCursor.format()).toString();
+	}
+
+	/**
+	 * Replaces the offset based <code>next</code> link with the cursor link, and removes the links that cannot be
+	 * followed with a cursor
+	 */
+	private void setLinks(IBaseBundle theBundle, String theNextUrl) {
+		FhirTerser terser = fhirContext.newTerser();
+		BaseRuntimeChildDefinition linkChild = fhirContext.getResourceDefinition(theBundle).getChildByName("link");
+		List<IBase> links = linkChild.getAccessor().getValues(theBundle);
+		for (Iterator<IBase> iterator = links.iterator(); iterator.hasNext(); ) {
+			String relation = terser.getSinglePrimitiveValueOrNull(iterator.next(), "relation");
+			if (Constants.LINK_NEXT.equals(relation) || Constants.LINK_PREVIOUS.equals(relation) || "prev".equals(relation) || Constants.LINK_LAST.equals(relation)) {
+				iterator.remove();
+			}
+		}
+		if (theNextUrl != null) {
+			BaseRuntimeElementCompositeDefinition<?> linkDefinition = (BaseRuntimeElementCompositeDefinition<?>) linkChild.getChildByName("link");
+			IBase link = linkDefinition.newInstance();
+			terser.setElement(link, "relation", Constants.LINK_NEXT);
+			terser.setElement(link, "url", theNextUrl);
+			linkChild.getMutator().addValue(theBundle, link);
+		}
+	}
+
+	/**
+	 * @return Whether the sort is descending, or <code>null</code> if the search is not sorted by update time only
+	 * (optionally followed by the resource id in the same direction)
+	 */
+	private static Boolean sortDirection(String[] theSort) {
+		if (theSort == null || theSort.length != 1 || isBlank(theSort[0])) {
+			return null;
+		}
+		String sort = theSort[0].replace(" ", "");
+		if (sort.equals(SORT_ASCENDING) || sort.equals(SORT_ASCENDING + ",_id")) {
+			return false;
+		}
+		if (sort.equals(SORT_DESCENDING) || sort.equals(SORT_DESCENDING + ",-_id")) {
+			return true;
+		}
+		return null;
+	}
+
+	/**
+	 * @return The requested page size limited to the maximum page size, or the default page size
+	 */
+	private static int pageSize(IRestfulServerDefaults theServer, String theCount) {
+		IPagingProvider pagingProvider = theServer.getPagingProvider();
+		Integer defaultPageSize = theServer.getDefaultPageSize() != null ? theServer.getDefaultPageSize() : pagingProvider.getDefaultPageSize();
+		Integer maximumPageSize = theServer.getMaximumPageSize() != null ? theServer.getMaximumPageSize() : pagingProvider.getMaximumPageSize();
+		int retVal = NumberUtils.toInt(theCount, defaultPageSize);
+		return Math.min(retVal, maximumPageSize);
+	}
+
+	private static class KeysetPage {
+		private final Map<String, String[]> parameters;
+		private final Cursor cursor;
+		private int count;
+
+		private KeysetPage(Map<String, String[]> parameters, Cursor cursor) {
+			this.parameters = parameters;
+			this.cursor = cursor;
+		}
+	}
+
+	/**
+	 * The update time of the last resource returned, and how many resources with that update time have been returned
+	 */
+	private static class Cursor {
+		private final long time;
+		private final int seenAtTime;
+
+		private Cursor(long time, int seenAtTime) {
+			this.time = time;
+			this.seenAtTime = seenAtTime;
+		}
+
+		private String format() {
+			return Base64.getUrlEncoder().withoutPadding().encodeToString((time + ":" + seenAtTime).getBytes(StandardCharsets.UTF_8));
+		}
+
+		private static Cursor parse(String theValue) {
+			if (isBlank(theValue)) {
+				return null;
+			}
+			try {
+				String[] parts = new String(Base64.getUrlDecoder().decode(theValue), StandardCharsets.UTF_8).split(":");
+				return new Cursor(Long.parseLong(parts[0]), Integer.parseInt(parts[1]));
+			} catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+				throw new InvalidRequestException("Invalid " + PARAM_CURSOR + " parameter: " + theValue);
+			}
+		}
+	}
+}
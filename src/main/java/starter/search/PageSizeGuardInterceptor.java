@@ -0,0 +1,162 @@
+package starter.search;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.interceptor.api.Hook;
+import ca.uhn.fhir.interceptor.api.Interceptor;
+import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.parser.IParser;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.RestOperationTypeEnum;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.api.server.ResponseDetails;
+import ca.uhn.fhir.rest.server.IPagingProvider;
+import ca.uhn.fhir.rest.server.IRestfulServerDefaults;
+import ca.uhn.fhir.util.BundleUtil;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.hl7.fhir.instance.model.api.IBaseBundle;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+
+import java.nio.charset.StandardCharsets;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static starter.search.SearchRequests.single;
+
+/**
+ * Limits the page size of searches so that the resources of a page fit in a memory budget, both per request and
+ * across all requests in progress.
+ * <p>
+ * The size of a page is estimated from the encoded size of the resources of its type, which is a moving average of
+ * a few resources sampled from each page returned. A page is reduced to the number of resources which fit in the
+ * per request budget, and to those which fit in what is left of the total budget after the pages in progress, but not
+ * below the default page size. Clients follow the <code>next</code> link for the rest of the results as usual.
+ * <p>
+ * The budgets are compared against encoded sizes, the parsed resources take a multiple of that on the heap. Pages
+ * written by the {@link StreamingSearchInterceptor} only hold a chunk at a time, and are only counted as such.
+ */
+@Interceptor
+public class PageSizeGuardInterceptor {
+
+	private static final String RESERVED_BYTES = PageSizeGuardInterceptor.class.getName() + "_RESERVED_BYTES";
+	private static final Set<RestOperationTypeEnum> PAGED_OPERATIONS = EnumSet.of(
+		RestOperationTypeEnum.SEARCH_TYPE,
+		RestOperationTypeEnum.SEARCH_SYSTEM,
+		RestOperationTypeEnum.GET_PAGE);
+	// Estimate for pages of unknown resource types (further pages and system searches)
+	private static final String ANY_TYPE = "*";
+	// Number of resources of each page encoded to update the estimates
+	private static final int SAMPLE_SIZE = 3;
+	// Weight of the latest sample in the moving average of the resource sizes
+	private static final double SIZE_AVERAGE_WEIGHT = 0.1;
+
+	private final FhirContext fhirContext;
+	private final long maximumRequestBytes;
+	private final long maximumTotalBytes;
+	private final long defaultResourceBytes;
+	private final StreamingSearchInterceptor streamingSearchInterceptor;
+	private final Map<String, Double> resourceBytes = new ConcurrentHashMap<>();
+	private final AtomicLong reservedBytes = new AtomicLong();
+	private final AtomicLong requestClampedCount = new AtomicLong();
+	private final AtomicLong totalClampedCount = new AtomicLong();
+
+	/**
+	 * @param defaultResourceBytes       The estimated encoded size of a resource of a type not seen yet
+	 * @param streamingSearchInterceptor The interceptor streaming large pages, or <code>null</code> if none is registered
+	 */
+	public PageSizeGuardInterceptor(FhirContext fhirContext, long maximumRequestBytes, long maximumTotalBytes, long defaultResourceBytes, StreamingSearchInterceptor streamingSearchInterceptor) {
+		this.fhirContext = fhirContext;
+		this.maximumRequestBytes = maximumRequestBytes;
+		this.maximumTotalBytes = maximumTotalBytes;
+		this.defaultResourceBytes = defaultResourceBytes;
+		this.streamingSearchInterceptor = streamingSearchInterceptor;
+	}
+
+	@Hook(Pointcut.SERVER_INCOMING_REQUEST_POST_PROCESSED)
+	public void incomingRequestPostProcessed(RequestDetails theRequestDetails) {
+		if (!PAGED_OPERATIONS.contains(theRequestDetails.getRestOperationType())) {
+			return;
+		}
+		IRestfulServerDefaults server = theRequestDetails.getServer();
+		IPagingProvider pagingProvider = server.getPagingProvider();
+		int defaultPageSize = server.getDefaultPageSize() != null ? server.getDefaultPageSize() : pagingProvider.getDefaultPageSize();
+		int maximumPageSize = server.getMaximumPageSize() != null ? server.getMaximumPageSize() : pagingProvider.getMaximumPageSize();
+		int count = Math.min(NumberUtils.toInt(single(theRequestDetails.getParameters().get(Constants.PARAM_COUNT)), defaultPageSize), maximumPageSize);
+
+		long estimate = estimate(theRequestDetails.getResourceName());
+		if (streamingSearchInterceptor != null && streamingSearchInterceptor.isStreamed(theRequestDetails)) {
+			reserve(theRequestDetails, (long) Math.min(count, streamingSearchInterceptor.getChunkSize()) * estimate);
+			return;
+		}
+
+		int minimumCount = Math.min(count, defaultPageSize);
+		int allowed = count;
+		if ((long) allowed * estimate > maximumRequestBytes) {
+			allowed = (int) Math.max(minimumCount, maximumRequestBytes / estimate);
+			requestClampedCount.incrementAndGet();
+		}
+		// Concurrent requests may both see the same remaining budget, which only overshoots it briefly
+		long remainingBytes = maximumTotalBytes - reservedBytes.get();
+		if ((long) allowed * estimate > remainingBytes) {
+			allowed = (int) Math.max(minimumCount, Math.max(0, remainingBytes) / estimate);
+			totalClampedCount.incrementAndGet();
+		}
+		if (allowed < count) {
+			theRequestDetails.removeParameter(Constants.PARAM_COUNT);
+			theRequestDetails.addParameter(Constants.PARAM_COUNT, new String[]{Integer.toString(allowed)});
+		}
+		reserve(theRequestDetails, (long) allowed * estimate);
+	}
+
+	@Hook(Pointcut.SERVER_OUTGOING_RESPONSE)
+	public void outgoingResponse(RequestDetails theRequestDetails, ResponseDetails theResponseDetails) {
+		if (!theRequestDetails.getUserData().containsKey(RESERVED_BYTES) || !(theResponseDetails.getResponseResource() instanceof IBaseBundle)) {
+			return;
+		}
+		List<IBaseResource> resources = BundleUtil.toListOfResources(fhirContext, (IBaseBundle) theResponseDetails.getResponseResource());
+		IParser parser = fhirContext.newJsonParser().setPrettyPrint(false);
+		for (int i = 0; i < Math.min(SAMPLE_SIZE, resources.size()); i++) {
+			IBaseResource resource = resources.get(i);
+			int bytes = parser.encodeResourceToString(resource).getBytes(StandardCharsets.UTF_8).length;
+			record(fhirContext.getResourceType(resource), bytes);
+			record(ANY_TYPE, bytes);
+		}
+	}
+
+	@Hook(Pointcut.SERVER_PROCESSING_COMPLETED)
+	public void processingCompleted(RequestDetails theRequestDetails) {
+		Long reserved = (Long) theRequestDetails.getUserData().remove(RESERVED_BYTES);
+		if (reserved != null) {
+			reservedBytes.addAndGet(-reserved);
+		}
+	}
+
+	private void reserve(RequestDetails theRequestDetails, long theBytes) {
+		reservedBytes.addAndGet(theBytes);
+		theRequestDetails.getUserData().put(RESERVED_BYTES, theBytes);
+	}
+
+	private long estimate(String theResourceType) {
+		Double retVal = resourceBytes.get(theResourceType != null ? theResourceType : ANY_TYPE);
+		return retVal != null ? Math.max(1, retVal.longValue()) : defaultResourceBytes;
+	}
+
+	private void record(String theResourceType, int theBytes) {
+		resourceBytes.merge(theResourceType, (double) theBytes, (average, sample) -> average + SIZE_AVERAGE_WEIGHT * (sample - average));
+	}
+
+	public long getReservedBytes() {
+		return reservedBytes.get();
+	}
+
+	public long getRequestClampedCount() {
+		return requestClampedCount.get();
+	}
+
+	public long getTotalClampedCount() {
+		return totalClampedCount.get();
+	}
+}
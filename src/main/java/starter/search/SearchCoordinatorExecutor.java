@@ -0,0 +1,186 @@
+package starter.search;
+
+import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
+import ca.uhn.fhir.rest.server.exceptions.UnclassifiedServerFailureException;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import starter.AppProperties;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.apache.commons.lang3.ObjectUtils.defaultIfNull;
+
+/**
+ * The executor running the searches of the search coordinator, which resizes itself between the configured core and
+ * maximum pool sizes and turns searches away with <code>429 Too Many Requests</code> rather than letting them wait in
+ * a long queue.
+ * <p>
+ * A thread pool with a bounded queue only starts threads beyond its core size once the queue is full, so with the
+ * static settings searches wait behind busy threads while most of the maximum pool stays unused. Instead, the core
+ * size is raised while searches are waiting and lowered again once the pool is mostly idle.
+ * <p>
+ * Searches are rejected once {@link #isSaturated() the queue is deep enough} (see {@link SearchLoadSheddingInterceptor})
+ * or, for searches started by other means, when the queue is full. The <code>Retry-After</code> header is derived from
+ * the recent queue wait time.
+ */
+public class SearchCoordinatorExecutor extends ThreadPoolTaskExecutor {
+
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(SearchCoordinatorExecutor.class);
+
+	// Weight of the latest wait time in the moving average used for Retry-After
+	private static final double WAIT_AVERAGE_WEIGHT = 0.2;
+
+	private final int minimumPoolSize;
+	private final int maximumPoolSize;
+	private final int shedQueueDepth;
+	private final int resizeIntervalSeconds;
+	private final int maximumRetryAfterSeconds;
+	private final AtomicLong startedCount = new AtomicLong();
+	private final AtomicLong totalWaitNanos = new AtomicLong();
+	private final AtomicLong rejectedCount = new AtomicLong();
+	private final AtomicLong shedCount = new AtomicLong();
+	private volatile double averageWaitNanos;
+	private ScheduledExecutorService resizer;
+
+	/**
+	 * @param shedQueueDepth The number of waiting searches from which new searches are rejected
+	 */
+	public SearchCoordinatorExecutor(int minimumPoolSize, int maximumPoolSize, int queueCapacity, int shedQueueDepth, int resizeIntervalSeconds, int maximumRetryAfterSeconds) {
+		this.minimumPoolSize = minimumPoolSize;
+		this.maximumPoolSize = maximumPoolSize;
+		this.shedQueueDepth = shedQueueDepth;
+		this.resizeIntervalSeconds = resizeIntervalSeconds;
+		this.maximumRetryAfterSeconds = maximumRetryAfterSeconds;
+		setThreadNamePrefix("search_coord_");
+		setCorePoolSize(minimumPoolSize);
+		setMaxPoolSize(maximumPoolSize);
+		setQueueCapacity(queueCapacity);
+		setTaskDecorator(task -> {
+			long queued = System.nanoTime();
+			return () -> {
+				recordWait(System.nanoTime() - queued);
+				task.run();
+			};
+		});
+		setRejectedExecutionHandler((task, executor) -> {
+			rejectedCount.incrementAndGet();
+			throw newTooManySearchesException();
+		});
+	}
+
+	/**
+	 * Creates the executor from the <code>search_coord_*</code> pool settings, the core pool size being the lower bound
+	 * of the pool
+	 */
+	public static SearchCoordinatorExecutor create(AppProperties appProperties) {
+		AppProperties.SearchCoordinator config = appProperties.getSearch_coordinator();
+		int minimumPoolSize = defaultIfNull(appProperties.getSearch_coord_core_pool_size(), 20);
+		int maximumPoolSize = Math.max(minimumPoolSize, defaultIfNull(appProperties.getSearch_coord_max_pool_size(), 100));
+		int queueCapacity = defaultIfNull(appProperties.getSearch_coord_queue_capacity(), 200);
+		int shedQueueDepth = Math.min(queueCapacity, defaultIfNull(config.getShed_queue_depth(), queueCapacity));
+		ourLog.info("Search coordinator pool resizes between {} and {} threads, searches are rejected from {} waiting searches", minimumPoolSize, maximumPoolSize, shedQueueDepth);
+		return new SearchCoordinatorExecutor(minimumPoolSize, maximumPoolSize, queueCapacity, shedQueueDepth, config.getResize_interval_seconds(), config.getMax_retry_after_seconds());
+	}
+
+	@Override
+	protected ExecutorService initializeExecutor(ThreadFactory threadFactory, RejectedExecutionHandler rejectedExecutionHandler) {
+		ExecutorService retVal = super.initializeExecutor(threadFactory, rejectedExecutionHandler);
+		if (resizer == null) {
+			resizer = Executors.newSingleThreadScheduledExecutor(new BasicThreadFactory.Builder().namingPattern("search-coord-resizer-%d").daemon(true).build());
+			resizer.scheduleWithFixedDelay(this::resize, resizeIntervalSeconds, resizeIntervalSeconds, TimeUnit.SECONDS);
+		}
+		return retVal;
+	}
+
+	@Override
+	public void shutdown() {
+		if (resizer != null) {
+			resizer.shutdownNow();
+		}
+		super.shutdown();
+	}
+
+	/**
+	 * Grows the core pool by the number of waiting searches, and shrinks it halfway towards the active searches once
+	 * nothing is waiting and less than half of it is busy
+	 */
+	void resize() {
+		try {
+			ThreadPoolExecutor executor = getThreadPoolExecutor();
+			int corePoolSize = executor.getCorePoolSize();
+			int queued = executor.getQueue().size();
+			int active = executor.getActiveCount();
+
+			int target = corePoolSize;
+			if (queued > 0) {
+				target = Math.min(maximumPoolSize, corePoolSize + queued);
+			} else if (active < corePoolSize / 2) {
+				target = Math.max(minimumPoolSize, corePoolSize - Math.max(1, (corePoolSize - active) / 2));
+			}
+			if (target != corePoolSize) {
+				ourLog.debug("Resizing the search coordinator pool from {} to {} threads ({} active, {} waiting)", corePoolSize, target, active, queued);
+				setCorePoolSize(target);
+			}
+		} catch (RuntimeException e) {
+			// Keep the schedule alive
+			ourLog.warn("Failed to resize the search coordinator pool", e);
+		}
+	}
+
+	private void recordWait(long waitNanos) {
+		startedCount.incrementAndGet();
+		totalWaitNanos.addAndGet(waitNanos);
+		// Races between concurrent updates only lose a sample
+		averageWaitNanos = averageWaitNanos + WAIT_AVERAGE_WEIGHT * (waitNanos - averageWaitNanos);
+	}
+
+	/**
+	 * @return <code>true</code> if enough searches are waiting that new ones should be turned away
+	 */
+	public boolean isSaturated() {
+		return getQueueDepth() >= shedQueueDepth;
+	}
+
+	/**
+	 * Counts a search turned away because the executor is {@link #isSaturated() saturated}, and creates the exception
+	 * to respond with
+	 */
+	public BaseServerResponseException shed() {
+		shedCount.incrementAndGet();
+		return newTooManySearchesException();
+	}
+
+	private BaseServerResponseException newTooManySearchesException() {
+		long retryAfterSeconds = Math.max(1, Math.min(maximumRetryAfterSeconds, (long) Math.ceil(averageWaitNanos / TimeUnit.SECONDS.toNanos(1))));
+		BaseServerResponseException retVal = new UnclassifiedServerFailureException(429, "Too many searches are in progress, please retry later");
+		retVal.addResponseHeader("Retry-After", Long.toString(retryAfterSeconds));
+		return retVal;
+	}
+
+	public int getQueueDepth() {
+		return getThreadPoolExecutor().getQueue().size();
+	}
+
+	public long getStartedCount() {
+		return startedCount.get();
+	}
+
+	public double getTotalWaitMillis() {
+		return totalWaitNanos.get() / (double) TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+	public long getRejectedCount() {
+		return rejectedCount.get();
+	}
+
+	public long getShedCount() {
+		return shedCount.get();
+	}
+}
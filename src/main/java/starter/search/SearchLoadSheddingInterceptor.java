@@ -0,0 +1,35 @@
+package starter.search;
+
+import ca.uhn.fhir.interceptor.api.Hook;
+import ca.uhn.fhir.interceptor.api.Interceptor;
+import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.rest.api.RestOperationTypeEnum;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Rejects new searches with <code>429 Too Many Requests</code> while the search coordinator is saturated, before any
+ * work is done for them. Fetching further pages of searches already run is not affected.
+ */
+@Interceptor
+public class SearchLoadSheddingInterceptor {
+
+	private static final Set<RestOperationTypeEnum> SEARCH_OPERATIONS = EnumSet.of(
+		RestOperationTypeEnum.SEARCH_TYPE,
+		RestOperationTypeEnum.SEARCH_SYSTEM);
+
+	private final SearchCoordinatorExecutor executor;
+
+	public SearchLoadSheddingInterceptor(SearchCoordinatorExecutor executor) {
+		this.executor = executor;
+	}
+
+	@Hook(Pointcut.SERVER_INCOMING_REQUEST_POST_PROCESSED)
+	public void incomingRequestPostProcessed(RequestDetails theRequestDetails) {
+		if (SEARCH_OPERATIONS.contains(theRequestDetails.getRestOperationType()) && executor.isSaturated()) {
+			throw executor.shed();
+		}
+	}
+}
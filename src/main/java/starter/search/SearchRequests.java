@@ -0,0 +1,17 @@
+package starter.search;
+
+/**
+ * Helpers for the interceptors that rewrite or answer search requests.
+ */
+final class SearchRequests {
+
+	private SearchRequests() {
+	}
+
+	/**
+	 * @return The first value of a request parameter, or <code>null</code> if it is absent
+	 */
+	static String single(String[] theValues) {
+		return theValues != null && theValues.length > 0 ? theValues[0] : null;
+	}
+}
@@ -0,0 +1,328 @@
+package starter.search;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.interceptor.api.Hook;
+import ca.uhn.fhir.interceptor.api.Interceptor;
+import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.jpa.api.dao.DaoRegistry;
+import ca.uhn.fhir.jpa.searchparam.MatchUrlService;
+import ca.uhn.fhir.jpa.searchparam.SearchParameterMap;
+import ca.uhn.fhir.parser.IParser;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.EncodingEnum;
+import ca.uhn.fhir.rest.api.RequestTypeEnum;
+import ca.uhn.fhir.rest.api.RestOperationTypeEnum;
+import ca.uhn.fhir.rest.api.server.IBundleProvider;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.server.IPagingProvider;
+import ca.uhn.fhir.rest.server.RestfulServer;
+import ca.uhn.fhir.rest.server.interceptor.auth.AuthorizationInterceptor;
+import ca.uhn.fhir.rest.server.interceptor.auth.SearchNarrowingInterceptor;
+import ca.uhn.fhir.rest.server.interceptor.consent.ConsentInterceptor;
+import ca.uhn.fhir.util.BundleUtil;
+import ca.uhn.fhir.util.FhirTerser;
+import ca.uhn.fhir.util.UrlUtil;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.apache.commons.text.StringEscapeUtils;
+import org.hl7.fhir.instance.model.api.IBase;
+import org.hl7.fhir.instance.model.api.IBaseBundle;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import starter.cache.CachedResponses;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.zip.GZIPOutputStream;
+
+import static starter.search.SearchRequests.single;
+
+/**
+ * Writes large search pages (a <code>_count</code> of at least the configured minimum) to the response as the
+ * resources are loaded, rather than building the whole Bundle before encoding it.
+ * <p>
+ * The resources of the page are loaded in chunks, and each chunk is encoded and flushed before the next one is
+ * loaded, so the memory needed for a page is bounded by the chunk size and the first entries reach the client before
+ * the last ones are loaded. Both new type searches and further pages (<code>_getpages</code>) are streamed.
+ * <p>
+ * Streamed responses are always compact. They skip the hooks which would run after this one, both those on
+ * <code>SERVER_INCOMING_REQUEST_PRE_HANDLED</code> and the interceptors that act on the response Bundle, so requests
+ * that need the server to reshape the Bundle (<code>_summary</code>, <code>_elements</code>, <code>_include</code>,
+ * ...) and browser requests are handled by the server as usual. Nothing is streamed when an
+ * <code>AuthorizationInterceptor</code>, <code>ConsentInterceptor</code> or <code>SearchNarrowingInterceptor</code>
+ * is registered, as streamed pages would bypass them.
+ */
+@Interceptor
+public class StreamingSearchInterceptor {
+
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(StreamingSearchInterceptor.class);
+
+	private static final String ENTRY_MARKER = "urn:uuid:" + UUID.randomUUID();
+	private static final Set<String> UNSUPPORTED_PARAMETERS = new HashSet<>(Arrays.asList(
+		Constants.PARAM_SUMMARY,
+		Constants.PARAM_ELEMENTS,
+		Constants.PARAM_INCLUDE,
+		Constants.PARAM_REVINCLUDE,
+		Constants.PARAM_CONTAINED,
+		Constants.PARAM_CONTAINED_TYPE,
+		Constants.PARAM_OFFSET,
+		"_total",
+		"_fhirpath",
+		KeysetPagingInterceptor.PARAM_CURSOR));
+	// Parameters which only affect the encoding and are not part of the search
+	private static final Set<String> FORMATTING_PARAMETERS = new HashSet<>(Arrays.asList(
+		Constants.PARAM_FORMAT,
+		Constants.PARAM_PRETTY));
+
+	private final FhirContext fhirContext;
+	private final DaoRegistry daoRegistry;
+	private final MatchUrlService matchUrlService;
+	private final int minimumCount;
+	private final int chunkSize;
+	private volatile Boolean enabled;
+
+	/**
+	 * @param minimumCount The smallest page size that is streamed
+	 * @param chunkSize    The number of resources loaded and written at a time
+	 */
+	public StreamingSearchInterceptor(FhirContext fhirContext, DaoRegistry daoRegistry, MatchUrlService matchUrlService, int minimumCount, int chunkSize) {
+		this.fhirContext = fhirContext;
+		this.daoRegistry = daoRegistry;
+		this.matchUrlService = matchUrlService;
+		this.minimumCount = minimumCount;
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * @return <code>true</code> if the page requested is written to the response by this interceptor
+	 */
+	public boolean isStreamed(RequestDetails theRequestDetails) {
+		RestOperationTypeEnum operation = theRequestDetails.getRestOperationType();
+		if ((operation != RestOperationTypeEnum.SEARCH_TYPE && operation != RestOperationTypeEnum.GET_PAGE)
+			|| theRequestDetails.getRequestType() != RequestTypeEnum.GET) {
+			return false;
+		}
+		if (!isEnabled(theRequestDetails)) {
+			return false;
+		}
+		Map<String, String[]> parameters = theRequestDetails.getParameters();
+		if (count(theRequestDetails) < minimumCount || !Collections.disjoint(parameters.keySet(), UNSUPPORTED_PARAMETERS)) {
+			return false;
+		}
+		EncodingEnum encoding = CachedResponses.responseEncoding(theRequestDetails);
+		return encoding == EncodingEnum.JSON || encoding == EncodingEnum.XML;
+	}
+
+	/**
+	 * @return <code>false</code> if the server checks or narrows access to resources, which is determined once the
+	 * server handles requests, as interceptors may still be registered after this one during startup
+	 */
+	private boolean isEnabled(RequestDetails theRequestDetails) {
+		Boolean retVal = enabled;
+		if (retVal == null) {
+			retVal = true;
+			if (theRequestDetails.getServer() instanceof RestfulServer) {
+				for (Object interceptor : ((RestfulServer) theRequestDetails.getServer()).getInterceptorService().getAllRegisteredInterceptors()) {
+					if (interceptor instanceof AuthorizationInterceptor || interceptor instanceof ConsentInterceptor || interceptor instanceof SearchNarrowingInterceptor) {
+						ourLog.warn("Search streaming is disabled, as streamed pages would bypass the registered {}", interceptor.getClass().getName());
+						retVal = false;
+						break;
+					}
+				}
+			}
+			enabled = retVal;
+		}
+		return retVal;
+	}
+
+	/**
+	 * @return The number of resources a streamed page holds in memory at a time
+	 */
+	public int getChunkSize() {
+		return chunkSize;
+	}
+
+	@Hook(Pointcut.SERVER_INCOMING_REQUEST_POST_PROCESSED)
+	public boolean incomingRequestPostProcessed(RequestDetails theRequestDetails, HttpServletResponse theServletResponse) throws IOException {
+		if (!isStreamed(theRequestDetails)) {
+			return true;
+		}
+		RestOperationTypeEnum operation = theRequestDetails.getRestOperationType();
+		Map<String, String[]> parameters = theRequestDetails.getParameters();
+		IPagingProvider pagingProvider = theRequestDetails.getServer().getPagingProvider();
+		int count = count(theRequestDetails);
+		EncodingEnum encoding = CachedResponses.responseEncoding(theRequestDetails);
+
+		IBundleProvider results;
+		int offset;
+		String searchId;
+		if (operation == RestOperationTypeEnum.SEARCH_TYPE) {
+			SearchParameterMap map = matchUrlService.translateMatchUrl(searchUrl(theRequestDetails), fhirContext.getResourceDefinition(theRequestDetails.getResourceName()));
+			map.setCount(count);
+			results = daoRegistry.getResourceDao(theRequestDetails.getResourceName()).search(map, theRequestDetails);
+			offset = 0;
+			searchId = results.getUuid();
+		} else {
+			searchId = single(parameters.get(Constants.PARAM_PAGINGACTION));
+			results = pagingProvider.retrieveResultList(theRequestDetails, searchId);
+			if (results == null) {
+				// Let the server report the expired search
+				return true;
+			}
+			offset = NumberUtils.toInt(single(parameters.get(Constants.PARAM_PAGINGOFFSET)), 0);
+		}
+
+		Integer total = results.size();
+		int end = total != null ? Math.min(offset + count, total) : offset + count;
+		List<IBaseResource> firstChunk = offset < end ? results.getResources(offset, Math.min(offset + chunkSize, end)) : Collections.emptyList();
+		boolean hasNext = total != null ? end < total : firstChunk.size() == Math.min(chunkSize, count);
+		if (hasNext && searchId == null) {
+			searchId = pagingProvider.storeResultList(theRequestDetails, results);
+		}
+
+		IBaseBundle skeleton = skeleton(theRequestDetails, total, offset, count, hasNext ? searchId : null, !firstChunk.isEmpty());
+		IParser parser = encoding.newParser(fhirContext).setPrettyPrint(false);
+		String encodedSkeleton = parser.encodeResourceToString(skeleton);
+
+		theServletResponse.setStatus(Constants.STATUS_HTTP_200_OK);
+		theServletResponse.setContentType(encoding.getResourceContentTypeNonLegacy() + Constants.CHARSET_UTF8_CTSUFFIX);
+		OutputStream outputStream = theServletResponse.getOutputStream();
+		String acceptEncoding = theRequestDetails.getHeader(Constants.HEADER_ACCEPT_ENCODING);
+		if (acceptEncoding != null && acceptEncoding.contains(Constants.ENCODING_GZIP)) {
+			theServletResponse.addHeader(Constants.HEADER_CONTENT_ENCODING, Constants.ENCODING_GZIP);
+			outputStream = new GZIPOutputStream(outputStream, true);
+		}
+
+		Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+		try {
+			if (firstChunk.isEmpty()) {
+				writer.write(encodedSkeleton);
+			} else {
+				int marker = encodedSkeleton.indexOf(ENTRY_MARKER);
+				int entryStart = encoding == EncodingEnum.JSON ? encodedSkeleton.lastIndexOf('{', marker) : encodedSkeleton.lastIndexOf("<entry>", marker);
+				int entryEnd = encoding == EncodingEnum.JSON ? encodedSkeleton.indexOf('}', marker) + 1 : encodedSkeleton.indexOf("</entry>", marker) + "</entry>".length();
+				writer.write(encodedSkeleton, 0, entryStart);
+				writeEntries(writer, parser, encoding, theRequestDetails.getFhirServerBase(), results, firstChunk, offset, end);
+				writer.write(encodedSkeleton, entryEnd, encodedSkeleton.length() - entryEnd);
+			}
+		} catch (IOException | RuntimeException e) {
+			// The status and the start of the Bundle have been sent, so the failure can no longer be reported as an
+			// OperationOutcome. The writer is not closed, which leaves the body unfinished (a gzip body without its
+			// trailer), and the failure is passed on so that the request fails rather than ending as a truncated 200.
+			ourLog.error("Failed to stream the search page {}, aborting the response", theRequestDetails.getCompleteUrl(), e);
+			throw e;
+		}
+		writer.close();
+
+		CachedResponses.processingCompletedNormally(theRequestDetails);
+		return false;
+	}
+
+	private static int count(RequestDetails theRequestDetails) {
+		int maximumPageSize = theRequestDetails.getServer().getPagingProvider().getMaximumPageSize();
+		return Math.min(NumberUtils.toInt(single(theRequestDetails.getParameters().get(Constants.PARAM_COUNT)), 0), maximumPageSize);
+	}
+
+	private void writeEntries(Writer theWriter, IParser theParser, EncodingEnum theEncoding, String theServerBase, IBundleProvider theResults, List<IBaseResource> theFirstChunk, int theOffset, int theEnd) throws IOException {
+		List<IBaseResource> chunk = theFirstChunk;
+		int from = theOffset;
+		boolean first = true;
+		while (!chunk.isEmpty()) {
+			for (IBaseResource resource : chunk) {
+				String fullUrl = theServerBase + '/' + resource.getIdElement().toUnqualifiedVersionless().getValue();
+				if (theEncoding == EncodingEnum.JSON) {
+					if (!first) {
+						theWriter.write(',');
+					}
+					theWriter.write("{\"fullUrl\":\"" + StringEscapeUtils.escapeJson(fullUrl) + "\",\"resource\":");
+					theParser.encodeResourceToWriter(resource, theWriter);
+					theWriter.write(",\"search\":{\"mode\":\"match\"}}");
+				} else {
+					theWriter.write("<entry><fullUrl value=\"" + StringEscapeUtils.escapeXml10(fullUrl) + "\"/><resource>");
+					theParser.encodeResourceToWriter(resource, theWriter);
+					theWriter.write("</resource><search><mode value=\"match\"/></search></entry>");
+				}
+				first = false;
+			}
+			theWriter.flush();
+
+			from += chunk.size();
+			if (from >= theEnd || chunk.size() < chunkSize) {
+				break;
+			}
+			chunk = theResults.getResources(from, Math.min(from + chunkSize, theEnd));
+		}
+	}
+
+	/**
+	 * @return The Bundle without its entries, and with a single marker entry where the entries are written if there
+	 * are any
+	 */
+	private IBaseBundle skeleton(RequestDetails theRequestDetails, Integer theTotal, int theOffset, int theCount, String theNextSearchId, boolean theHasEntries) {
+		IBaseBundle retVal = (IBaseBundle) fhirContext.getResourceDefinition("Bundle").newInstance();
+		retVal.setId(UUID.randomUUID().toString());
+		retVal.getMeta().setLastUpdated(new Date());
+		BundleUtil.setBundleType(fhirContext, retVal, "searchset");
+		if (theTotal != null) {
+			BundleUtil.setTotal(fhirContext, retVal, theTotal);
+		}
+
+		FhirTerser terser = fhirContext.newTerser();
+		addLink(terser, retVal, Constants.LINK_SELF, theRequestDetails.getCompleteUrl());
+		if (theNextSearchId != null) {
+			addLink(terser, retVal, Constants.LINK_NEXT, pageUrl(theRequestDetails, theNextSearchId, theOffset + theCount, theCount));
+		}
+		if (theOffset > 0 && theRequestDetails.getRestOperationType() == RestOperationTypeEnum.GET_PAGE) {
+			String searchId = single(theRequestDetails.getParameters().get(Constants.PARAM_PAGINGACTION));
+			addLink(terser, retVal, Constants.LINK_PREVIOUS, pageUrl(theRequestDetails, searchId, Math.max(0, theOffset - theCount), theCount));
+		}
+		if (theHasEntries) {
+			IBase entry = terser.addElement(retVal, "entry");
+			terser.setElement(entry, "fullUrl", ENTRY_MARKER);
+		}
+		return retVal;
+	}
+
+	private static void addLink(FhirTerser theTerser, IBaseBundle theBundle, String theRelation, String theUrl) {
+		IBase link = theTerser.addElement(theBundle, "link");
+		theTerser.setElement(link, "relation", theRelation);
+		theTerser.setElement(link, "url", theUrl);
+	}
+
+	private static String pageUrl(RequestDetails theRequestDetails, String theSearchId, int theOffset, int theCount) {
+		return theRequestDetails.getFhirServerBase() + '?' + Constants.PARAM_PAGINGACTION + '=' + UrlUtil.escapeUrlParam(theSearchId)
+			+ '&' + Constants.PARAM_PAGINGOFFSET + '=' + theOffset
+			+ '&' + Constants.PARAM_COUNT + '=' + theCount
+			+ '&' + Constants.PARAM_BUNDLETYPE + "=searchset";
+	}
+
+	/**
+	 * @return The search as a match URL, without the parameters that only affect the encoding
+	 */
+	private static String searchUrl(RequestDetails theRequestDetails) {
+		StringBuilder retVal = new StringBuilder(theRequestDetails.getResourceName());
+		char separator = '?';
+		for (Map.Entry<String, String[]> parameter : theRequestDetails.getParameters().entrySet()) {
+			if (FORMATTING_PARAMETERS.contains(parameter.getKey())) {
+				continue;
+			}
+			for (String value : parameter.getValue()) {
+				retVal.append(separator).append(UrlUtil.escapeUrlParam(parameter.getKey())).append('=').append(UrlUtil.escapeUrlParam(value));
+				separator = '&';
+			}
+		}
+		return retVal.toString();
+	}
+
+}
@@ -0,0 +1,163 @@
+package starter.validation;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.interceptor.api.Hook;
+import ca.uhn.fhir.interceptor.api.Interceptor;
+import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.parser.DataFormatException;
+import ca.uhn.fhir.validation.IValidationContext;
+import ca.uhn.fhir.validation.IValidatorModule;
+import ca.uhn.fhir.validation.SingleValidationMessage;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.instance.model.api.IPrimitiveType;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link IValidatorModule} that remembers the outcome of validating a resource, so that resubmitting an identical
+ * resource (e.g. an idempotent retry) does not run the full profile validation again.
+ * <p>
+ * Outcomes are keyed by a hash of the canonical (compact JSON) resource content, its declared profiles, the profiles
+ * requested through the validation options and the generation of the conformance resources. The generation is
+ * incremented, and the cache cleared, once a write of a conformance resource has been committed, so that outcomes
+ * computed against outdated profiles, value sets or code systems are not returned. The validation support chain keeps
+ * its own cache of conformance resources for a while, so outcomes also expire after at least that long. The cache is
+ * bounded by the estimated size of the cached outcomes.
+ */
+@Interceptor
+public class CachingValidatorModule implements IValidatorModule {
+
+	private static final Set<String> CONFORMANCE_RESOURCE_TYPES = ImmutableSet.of("StructureDefinition", "ValueSet", "CodeSystem", "ConceptMap", "NamingSystem", "ImplementationGuide");
+	private static final int ENTRY_OVERHEAD_BYTES = 128;
+
+	private final FhirContext fhirContext;
+	private final IValidatorModule delegate;
+	private final Cache<String, List<SingleValidationMessage>> cache;
+	private final AtomicLong generation = new AtomicLong();
+
+	/**
+	 * @param expireAfterMinutes How long outcomes are kept, no shorter than the validation support chain caches
+	 *                           conformance resources
+	 */
+	public CachingValidatorModule(FhirContext fhirContext, IValidatorModule delegate, long maximumBytes, long expireAfterMinutes) {
+		this.fhirContext = fhirContext;
+		this.delegate = delegate;
+		this.cache = CacheBuilder.newBuilder()
+			.maximumWeight(maximumBytes)
+			.expireAfterWrite(expireAfterMinutes, TimeUnit.MINUTES)
+			.weigher((String key, List<SingleValidationMessage> messages) -> weigh(key, messages))
+			.recordStats()
+			.build();
+	}
+
+	@Override
+	public void validateResource(IValidationContext<IBaseResource> theCtx) {
+		String key;
+		try {
+			key = key(theCtx);
+		} catch (DataFormatException e) {
+			// Unparseable input, let the delegate report it
+			delegate.validateResource(theCtx);
+			return;
+		}
+
+		List<SingleValidationMessage> cached = cache.getIfPresent(key);
+		if (cached != null) {
+			cached.forEach(theCtx::addValidationMessage);
+			return;
+		}
+
+		int existingMessageCount = theCtx.getMessages().size();
+		delegate.validateResource(theCtx);
+		List<SingleValidationMessage> messages = theCtx.getMessages();
+		cache.put(key, ImmutableList.copyOf(messages.subList(existingMessageCount, messages.size())));
+	}
+
+	private String key(IValidationContext<IBaseResource> theCtx) {
+		IBaseResource resource = theCtx.getResource();
+		String canonical = theCtx.getFhirContext().newJsonParser().setPrettyPrint(false).encodeResourceToString(resource);
+
+		Set<String> profiles = new TreeSet<>(theCtx.getOptions().getProfiles());
+		if (resource.getMeta() != null) {
+			for (IPrimitiveType<String> profile : resource.getMeta().getProfile()) {
+				profiles.add(profile.getValue());
+			}
+		}
+
+		Hasher hasher = Hashing.sha256().newHasher()
+			.putLong(generation.get())
+			.putString(canonical, StandardCharsets.UTF_8);
+		for (String profile : profiles) {
+			hasher.putChar('|').putString(profile, StandardCharsets.UTF_8);
+		}
+		return hasher.hash().toString();
+	}
+
+	private static int weigh(String key, List<SingleValidationMessage> messages) {
+		int retVal = ENTRY_OVERHEAD_BYTES + key.length() * 2;
+		for (SingleValidationMessage message : messages) {
+			retVal += ENTRY_OVERHEAD_BYTES;
+			retVal += message.getMessage() != null ? message.getMessage().length() * 2 : 0;
+			retVal += message.getLocationString() != null ? message.getLocationString().length() * 2 : 0;
+		}
+		return retVal;
+	}
+
+	@Hook(Pointcut.STORAGE_PRECOMMIT_RESOURCE_CREATED)
+	public void resourceCreated(IBaseResource theResource) {
+		invalidateIfConformanceResource(theResource);
+	}
+
+	@Hook(Pointcut.STORAGE_PRECOMMIT_RESOURCE_UPDATED)
+	public void resourceUpdated(IBaseResource theOldResource, IBaseResource theNewResource) {
+		invalidateIfConformanceResource(theNewResource);
+	}
+
+	@Hook(Pointcut.STORAGE_PRECOMMIT_RESOURCE_DELETED)
+	public void resourceDeleted(IBaseResource theResource) {
+		invalidateIfConformanceResource(theResource);
+	}
+
+	private void invalidateIfConformanceResource(IBaseResource theResource) {
+		if (!CONFORMANCE_RESOURCE_TYPES.contains(fhirContext.getResourceType(theResource))) {
+			return;
+		}
+		// Validations running before the commit still see the previous version, so outcomes are only invalidated after it
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			invalidateAll();
+			return;
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+			@Override
+			public void afterCommit() {
+				invalidateAll();
+			}
+		});
+	}
+
+	private void invalidateAll() {
+		generation.incrementAndGet();
+		cache.invalidateAll();
+	}
+
+	public long getHitCount() {
+		return cache.stats().hitCount();
+	}
+
+	public long getMissCount() {
+		return cache.stats().missCount();
+	}
+}
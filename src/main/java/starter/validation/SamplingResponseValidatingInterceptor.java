@@ -0,0 +1,115 @@
+package starter.validation;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.interceptor.api.Hook;
+import ca.uhn.fhir.interceptor.api.Interceptor;
+import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.validation.FhirValidator;
+import ca.uhn.fhir.validation.IValidatorModule;
+import ca.uhn.fhir.validation.ResultSeverityEnum;
+import ca.uhn.fhir.validation.SingleValidationMessage;
+import ca.uhn.fhir.validation.ValidationResult;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Validates a sampled fraction of outgoing responses without holding up the request.
+ * <p>
+ * Unlike {@link ca.uhn.fhir.rest.server.interceptor.ResponseValidatingInterceptor}, this interceptor never fails a
+ * request. The sampled response is encoded on the request thread (so that later changes to the resource cannot race
+ * with validation) and validated on a small bounded executor. Issues are logged and counted; when the executor queue
+ * is full the sample is dropped and counted instead of blocking the request.
+ */
+@Interceptor
+public class SamplingResponseValidatingInterceptor {
+
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(SamplingResponseValidatingInterceptor.class);
+
+	private final FhirContext fhirContext;
+	private final FhirValidator validator;
+	private final double sampleRate;
+	private final ThreadPoolExecutor executor;
+
+	private final AtomicLong validatedCount = new AtomicLong();
+	private final AtomicLong droppedCount = new AtomicLong();
+	private final AtomicLong errorCount = new AtomicLong();
+	private final AtomicLong warningCount = new AtomicLong();
+	private final AtomicLong failureCount = new AtomicLong();
+
+	public SamplingResponseValidatingInterceptor(FhirContext fhirContext, IValidatorModule validatorModule, double sampleRate, int threads, int queueCapacity) {
+		this.fhirContext = fhirContext;
+		this.validator = fhirContext.newValidator();
+		this.validator.registerValidatorModule(validatorModule);
+		this.sampleRate = sampleRate;
+		this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+			new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+			new BasicThreadFactory.Builder().namingPattern("response-validation-%d").daemon(true).build(),
+			(task, executor) -> droppedCount.incrementAndGet());
+	}
+
+	@Hook(Pointcut.SERVER_OUTGOING_RESPONSE)
+	public boolean outgoingResponse(RequestDetails theRequestDetails, IBaseResource theResponseObject) {
+		if (theResponseObject == null || ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+			return true;
+		}
+
+		String encoded = fhirContext.newJsonParser().encodeResourceToString(theResponseObject);
+		String requestPath = theRequestDetails.getRequestPath();
+		executor.execute(() -> validate(requestPath, encoded));
+		return true;
+	}
+
+	private void validate(String requestPath, String encoded) {
+		try {
+			ValidationResult result = validator.validateWithResult(encoded);
+			validatedCount.incrementAndGet();
+			for (SingleValidationMessage message : result.getMessages()) {
+				if (message.getSeverity() != null && message.getSeverity().ordinal() >= ResultSeverityEnum.ERROR.ordinal()) {
+					errorCount.incrementAndGet();
+					ourLog.warn("Response to {} failed validation: {} - {}", requestPath, message.getLocationString(), message.getMessage());
+				} else if (message.getSeverity() == ResultSeverityEnum.WARNING) {
+					warningCount.incrementAndGet();
+					ourLog.debug("Response to {} has validation warning: {} - {}", requestPath, message.getLocationString(), message.getMessage());
+				}
+			}
+		} catch (Exception e) {
+			failureCount.incrementAndGet();
+			ourLog.warn("Could not validate response to {}", requestPath, e);
+		}
+	}
+
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	public long getValidatedCount() {
+		return validatedCount.get();
+	}
+
+	public long getDroppedCount() {
+		return droppedCount.get();
+	}
+
+	public long getErrorCount() {
+		return errorCount.get();
+	}
+
+	public long getWarningCount() {
+		return warningCount.get();
+	}
+
+	public long getFailureCount() {
+		return failureCount.get();
+	}
+
+	public int getQueueSize() {
+		return executor.getQueue().size();
+	}
+}
@@ -0,0 +1,107 @@
+package starter.validation;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.RuntimeResourceDefinition;
+import ca.uhn.fhir.context.support.IValidationSupport;
+import ca.uhn.fhir.util.FhirTerser;
+import ca.uhn.fhir.util.StopWatch;
+import ca.uhn.fhir.validation.FhirValidator;
+import ca.uhn.fhir.validation.IValidatorModule;
+import ca.uhn.fhir.validation.ValidationOptions;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Primes the validation support chain so that the first validations after a restart do not pay for lazily loading
+ * profiles, generating snapshots and expanding value sets.
+ * <p>
+ * For every resource profile that does not belong to the core specification (i.e. the profiles contributed by the
+ * installed implementation guides) the profile is fetched through the validation support chain, which generates and
+ * caches its snapshot, and an empty instance of the profiled type is validated against it, which loads the profiles,
+ * value sets and code systems the validator needs for it. Profiles are warmed in parallel. Failures are logged and
+ * never prevent startup.
+ */
+public class ValidationSupportWarmer {
+
+	private static final org.slf4j.Logger ourLog = org.slf4j.LoggerFactory.getLogger(ValidationSupportWarmer.class);
+
+	private static final String CORE_PROFILE_PREFIX = "http://hl7.org/fhir/StructureDefinition/";
+
+	private final FhirContext fhirContext;
+	private final IValidationSupport validationSupport;
+	private final IValidatorModule validatorModule;
+
+	public ValidationSupportWarmer(FhirContext fhirContext, IValidationSupport validationSupport, IValidatorModule validatorModule) {
+		this.fhirContext = fhirContext;
+		this.validationSupport = validationSupport;
+		this.validatorModule = validatorModule;
+	}
+
+	public void warmUp(int parallelism) {
+		StopWatch sw = new StopWatch();
+		long usedMemoryBefore = usedMemory();
+
+		FhirTerser terser = fhirContext.newTerser();
+		List<IBaseResource> structureDefinitions = validationSupport.fetchAllStructureDefinitions();
+		List<String[]> profiles = new ArrayList<>();
+		if (structureDefinitions != null) {
+			for (IBaseResource structureDefinition : structureDefinitions) {
+				String url = terser.getSinglePrimitiveValueOrNull(structureDefinition, "url");
+				String kind = terser.getSinglePrimitiveValueOrNull(structureDefinition, "kind");
+				String type = terser.getSinglePrimitiveValueOrNull(structureDefinition, "type");
+				if (url != null && type != null && "resource".equals(kind) && !url.startsWith(CORE_PROFILE_PREFIX)) {
+					profiles.add(new String[]{url, type});
+				}
+			}
+		}
+
+		FhirValidator validator = fhirContext.newValidator();
+		validator.registerValidatorModule(validatorModule);
+
+		AtomicInteger failed = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, parallelism));
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (String[] profile : profiles) {
+				futures.add(executor.submit(() -> warmUp(validator, profile[0], profile[1], failed)));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} catch (ExecutionException e) {
+			ourLog.warn("Validation warm-up failed", e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			ourLog.warn("Interrupted during validation warm-up");
+		} finally {
+			executor.shutdownNow();
+		}
+
+		ourLog.info("Warmed up validation for {} profile(s) ({} failed) in {}, heap usage grew by approximately {} MB",
+			profiles.size(), failed.get(), sw, (usedMemory() - usedMemoryBefore) / (1024 * 1024));
+	}
+
+	private void warmUp(FhirValidator validator, String url, String type, AtomicInteger failed) {
+		try {
+			validationSupport.fetchStructureDefinition(url);
+			RuntimeResourceDefinition resourceDefinition = fhirContext.getResourceDefinition(type);
+			IBaseResource instance = resourceDefinition.newInstance();
+			validator.validateWithResult(instance, new ValidationOptions().addProfile(url));
+		} catch (Exception e) {
+			failed.incrementAndGet();
+			ourLog.debug("Could not warm up validation for profile {}", url, e);
+		}
+	}
+
+	private static long usedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}